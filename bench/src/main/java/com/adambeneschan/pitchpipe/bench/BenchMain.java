@@ -0,0 +1,28 @@
+package com.adambeneschan.pitchpipe.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks.  The arguments are the usual JMH command line
+ * options (e.g. a regular expression naming the benchmarks to run, or
+ * {@code -f 1 -wi 3 -i 5}); the GC profiler is always added, so that the
+ * allocation rate per operation ({@code gc.alloc.rate.norm}) is reported
+ * next to each time.
+ * @author Adam Beneschan
+ */
+public class BenchMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdLine = new CommandLineOptions(args);
+        Options opts = new OptionsBuilder()
+            .parent(cmdLine)
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(opts).run();
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.adambeneschan.pitchpipe.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.adambeneschan.pitchpipe.Chord;
+import com.adambeneschan.pitchpipe.ChordBuilder;
+import com.adambeneschan.pitchpipe.ChordSink;
+import com.adambeneschan.pitchpipe.PlayStoppedListener;
+
+/**
+ * Benchmarks for what the UI thread does with a {@link ChordBuilder} on
+ * each tap: adding or changing a note, and copying the notes into a
+ * {@link Chord} to play.  The chords are sent to a sink that consumes
+ * them, instead of to {@code ChordPlayer}.
+ * @author Adam Beneschan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChordBuilderBench {
+
+    private int[] mNotes;
+    private int mRollDelay;
+    private ChordBuilder mBuilder;
+
+    /**
+     * A ChordSink that hands every chord to a Blackhole.
+     */
+    private static class BlackholeSink implements ChordSink {
+        private final Blackhole mHole;
+
+        BlackholeSink(Blackhole hole) {
+            mHole = hole;
+        }
+
+        @Override
+        public void play(Chord chord, PlayStoppedListener l) {
+            mHole.consume(chord);
+        }
+
+        @Override
+        public void playAdded(Chord chord, PlayStoppedListener l) {
+            mHole.consume(chord);
+        }
+
+        @Override
+        public void prefetch(Chord chord) {
+            mHole.consume(chord);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp(ChordShape shape, Blackhole hole) {
+        mNotes = shape.notes();
+        mRollDelay = shape.rollDelay;
+        ChordBuilder.setSink(new BlackholeSink(hole));
+        mBuilder = new ChordBuilder();
+        for (int note : mNotes)
+            mBuilder.add(note);
+    }
+
+    /** Builds the chord one note at a time, as the user taps it in. */
+    @Benchmark
+    public ChordBuilder add() {
+        ChordBuilder b = new ChordBuilder();
+        for (int note : mNotes)
+            b.add(note);
+        return b;
+    }
+
+    /** Moves the last note up and back, as when a sharp or flat is tapped. */
+    @Benchmark
+    public ChordBuilder changeLast() {
+        int last = mNotes[mNotes.length - 1];
+        mBuilder.changeLast(last + 1);
+        mBuilder.changeLast(last);
+        return mBuilder;
+    }
+
+    /** Copies the notes into a Chord and hands it to the sink. */
+    @Benchmark
+    public void play() {
+        mBuilder.play(ChordShape.INSTRUMENT, ChordShape.DURATION, mRollDelay);
+    }
+
+    /** Copies the notes into a Chord and prefetches it, as after each tap. */
+    @Benchmark
+    public void prefetch() {
+        mBuilder.prefetch(ChordShape.INSTRUMENT, ChordShape.DURATION, mRollDelay);
+    }
+
+}
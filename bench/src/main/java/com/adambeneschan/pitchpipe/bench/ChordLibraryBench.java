@@ -0,0 +1,119 @@
+package com.adambeneschan.pitchpipe.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.adambeneschan.pitchpipe.Chord;
+import com.adambeneschan.pitchpipe.ChordLibrary;
+
+/**
+ * Benchmarks for the song library: opening it (which should take the same
+ * time for a small library as for a large one), searching titles as the
+ * user types, and reading a song's chord.  The library is made up of
+ * titles built from a fixed list of words, so that searches find a
+ * realistic share of the songs.
+ * @author Adam Beneschan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChordLibraryBench {
+
+    private static final String[] sWORDS = {
+        "Ave", "Maria", "Shenandoah", "Sure", "on", "this", "Shining", "Night",
+        "O", "Magnum", "Mysterium", "Lux", "Aurumque", "Danny", "Boy", "Amazing",
+        "Grace", "Sanctus", "Gloria", "River", "Song", "Evening", "Morning", "Star"
+    };
+
+    @Param({ "50", "50000" })
+    public int songs;
+
+    private File mFile;
+    private ChordLibrary mLibrary;
+    private final int[] mResults = new int[100];
+    private final int[] mNotes = new int[16];
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(1);
+        List<ChordLibrary.Song> list = new ArrayList<ChordLibrary.Song>(songs);
+        for (int i = 0; i < songs; i++) {
+            StringBuilder title = new StringBuilder();
+            int words = 2 + random.nextInt(4);
+            for (int w = 0; w < words; w++) {
+                if (w > 0)
+                    title.append(' ');
+                title.append(sWORDS[random.nextInt(sWORDS.length)]);
+            }
+            int root = 43 + random.nextInt(12);
+            Chord chord = new Chord(new int[] { root, root + 7, root + 16, root + 24 }, 53, 5000, 300);
+            list.add(new ChordLibrary.Song(title.toString(), random.nextInt(24), chord));
+        }
+        mFile = File.createTempFile("pp-library", ".bin");
+        FileOutputStream fos = new FileOutputStream(mFile);
+        try {
+            ChordLibrary.write(list, fos);
+        } finally {
+            fos.close();
+        }
+        mLibrary = ChordLibrary.open(mFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /**
+     * Maps the library file and checks its header.  A mapping is only
+     * released when it is garbage collected, so this is timed one call at
+     * a time; run back to back, the mappings would use up the address
+     * space before the collector noticed.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 200)
+    @Measurement(iterations = 200)
+    public ChordLibrary open() throws IOException {
+        return ChordLibrary.open(mFile);
+    }
+
+    /** The first two letters typed: a prefix search. */
+    @Benchmark
+    public int searchPrefix() {
+        return mLibrary.search("sh", mResults);
+    }
+
+    /** A word from the middle of titles: a trigram search. */
+    @Benchmark
+    public int searchWord() {
+        return mLibrary.search("mysterium", mResults);
+    }
+
+    /** Reads the next song's notes, cycling through the library. */
+    @Benchmark
+    public int getNotes() {
+        int song = mNext;
+        mNext = (song + 1 == songs) ? 0 : song + 1;
+        return mLibrary.getNotes(song, mNotes);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.adambeneschan.pitchpipe.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import com.adambeneschan.pitchpipe.Chord;
+
+/**
+ * The shape of the chord used by a benchmark: how many notes it has and
+ * the roll delay between them (0 for a chord whose notes start together,
+ * as when a note is tapped; 300 ms, the app's default, for a rolled
+ * chord).
+ * @author Adam Beneschan
+ */
+@State(Scope.Thread)
+public class ChordShape {
+
+    /** The instrument used, Choir Aahs (the app's default). */
+    public static final int INSTRUMENT = 53;
+
+    /** The duration used, the app's default chord duration. */
+    public static final int DURATION = 5000;
+
+    /** The number of notes in the chord. */
+    @Param({ "1", "4", "8" })
+    public int chordSize;
+
+    /** The time in ms between the start of each note. */
+    @Param({ "0", "300" })
+    public int rollDelay;
+
+    /**
+     * Returns the notes of the chord: a stack of thirds from middle C.
+     * @return The notes, as MIDI notes.
+     */
+    public int[] notes() {
+        int[] notes = new int[chordSize];
+        for (int i = 0; i < chordSize; i++)
+            notes[i] = 60 + i * 4 - (i / 2);
+        return notes;
+    }
+
+    /**
+     * Returns the chord.
+     * @return A new Chord.
+     */
+    public Chord chord() {
+        return new Chord(notes(), INSTRUMENT, DURATION, rollDelay);
+    }
+
+}
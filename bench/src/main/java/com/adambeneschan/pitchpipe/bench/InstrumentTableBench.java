@@ -0,0 +1,87 @@
+package com.adambeneschan.pitchpipe.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.adambeneschan.pitchpipe.InstrumentCatalog;
+import com.adambeneschan.pitchpipe.InstrumentCatalogGenerator;
+import com.adambeneschan.pitchpipe.InstrumentTable;
+import com.adambeneschan.pitchpipe.MidiInstrument;
+
+/**
+ * Benchmarks for building the instrument table from the resource strings
+ * or from the binary catalog (what {@code InstrumentList} does at
+ * startup) and for looking up an
+ * instrument by its code (done for every chord played).  The strings are
+ * read from the app's resource files, in the directory given by the
+ * {@code pitchpipe.res} system property ({@code ../res} by default).
+ * These don't depend on the chord, so they are not parameterized by
+ * {@link ChordShape}.
+ * @author Adam Beneschan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InstrumentTableBench {
+
+    private String[] mNames;
+    private String[] mList;
+    private int mSourceHash;
+    private byte[] mCatalog;
+    private InstrumentTable mTable;
+    private int[] mCodes;
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        File res = new File(System.getProperty("pitchpipe.res", "../res"));
+        mNames = InstrumentCatalogGenerator.readArray(new File(res, "values/instruments.xml"), "instrument_names");
+        mList = InstrumentCatalogGenerator.readArray(new File(res, "values/other.xml"), "instrument_list");
+        mTable = InstrumentTable.parse(mNames, mList);
+        mSourceHash = InstrumentCatalog.sourceHash(mNames, mList);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InstrumentCatalog.write(mTable, mSourceHash, out);
+        mCatalog = out.toByteArray();
+
+        // Look up every code in the list, plus one that isn't there
+        List<MidiInstrument> instruments = mTable.list();
+        mCodes = new int[instruments.size() + 1];
+        for (int i = 0; i < instruments.size(); i++)
+            mCodes[i] = instruments.get(i).getCode();
+        mCodes[instruments.size()] = 128;
+    }
+
+    /** Parses the resource strings into a table. */
+    @Benchmark
+    public InstrumentTable parse() {
+        return InstrumentTable.parse(mNames, mList);
+    }
+
+    /** Checks the strings' hash and loads the table from the catalog. */
+    @Benchmark
+    public InstrumentTable loadCatalog() throws IOException {
+        int hash = InstrumentCatalog.sourceHash(mNames, mList);
+        return InstrumentCatalog.read(new ByteArrayInputStream(mCatalog), hash);
+    }
+
+    /** Looks up the next code, cycling through all of them. */
+    @Benchmark
+    public MidiInstrument instrumentForCode() {
+        int i = mNext;
+        mNext = (i + 1 == mCodes.length) ? 0 : i + 1;
+        return mTable.instrumentForCode(mCodes[i]);
+    }
+
+}
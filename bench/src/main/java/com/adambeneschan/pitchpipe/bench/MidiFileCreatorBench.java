@@ -0,0 +1,68 @@
+package com.adambeneschan.pitchpipe.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.adambeneschan.pitchpipe.Chord;
+import com.adambeneschan.pitchpipe.MidiEventBuffer;
+import com.adambeneschan.pitchpipe.MidiFileCreator;
+
+/**
+ * Benchmarks for encoding a chord as a MIDI file, in memory (as
+ * {@code ChordPlayer} does when it can use a {@code MidiDataSource}) and
+ * to a temporary file (as it does otherwise).
+ * @author Adam Beneschan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MidiFileCreatorBench {
+
+    private Chord mChord;
+    private File mFile;
+    private MidiEventBuffer mBuffer;
+
+    @Setup
+    public void setUp(ChordShape shape) throws IOException {
+        mChord = shape.chord();
+        mFile = File.createTempFile("bench", ".mid");
+        mBuffer = new MidiEventBuffer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /** Encodes to a new byte array, using the shared buffer pool. */
+    @Benchmark
+    public byte[] encode() {
+        return MidiFileCreator.encode(mChord);
+    }
+
+    /** Encodes into a buffer that is reused, so only the encoding is timed. */
+    @Benchmark
+    public int encodeIntoBuffer() {
+        mBuffer.reset();
+        MidiFileCreator.encode(mChord, mBuffer);
+        return mBuffer.length();
+    }
+
+    /** Writes the MIDI file to disk. */
+    @Benchmark
+    public long createFile() throws IOException {
+        MidiFileCreator.create(mFile, mChord);
+        return mFile.length();
+    }
+
+}
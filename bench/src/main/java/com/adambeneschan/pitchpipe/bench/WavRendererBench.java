@@ -0,0 +1,73 @@
+package com.adambeneschan.pitchpipe.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.adambeneschan.pitchpipe.Chord;
+import com.adambeneschan.pitchpipe.WavRenderer;
+
+/**
+ * Benchmark for exporting a setlist to a WAV file: ten eight-note chords,
+ * rolled, five seconds each, with two seconds between them (about a
+ * minute and a half of audio).  {@code threads} is the size of the
+ * fork/join pool the voices are rendered on; comparing 1 with more shows
+ * what rendering the voices in parallel gains.
+ * @author Adam Beneschan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WavRendererBench {
+
+    @Param({ "1", "4" })
+    public int threads;
+
+    @Param({ "16", "24" })
+    public int bits;
+
+    private ForkJoinPool mPool;
+    private WavRenderer mRenderer;
+    private List<Chord> mChords;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mPool = new ForkJoinPool(threads);
+        mRenderer = new WavRenderer(44100, bits, null, mPool);
+        mChords = new ArrayList<Chord>();
+        for (int i = 0; i < 10; i++) {
+            int root = 43 + i;
+            mChords.add(new Chord(new int[] { root, root + 7, root + 12, root + 16,
+                                              root + 19, root + 24, root + 28, root + 31 },
+                                  53, 5000, 300));
+        }
+        mFile = File.createTempFile("pp-export", ".wav");
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPool.shutdown();
+        mFile.delete();
+    }
+
+    /** Renders the setlist to the file. */
+    @Benchmark
+    public WavRenderer.Result render() throws IOException {
+        return mRenderer.render(mChords, 2000, mFile);
+    }
+
+}
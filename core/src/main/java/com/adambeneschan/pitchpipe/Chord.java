@@ -0,0 +1,195 @@
+/**
+ * 
+ */
+package com.adambeneschan.pitchpipe;
+
+import java.util.Arrays;
+
+/**
+ * Represents information about a chord to be played.  A Chord can't be
+ * changed once it is constructed.  The notes are kept in the order they
+ * are played (which matters for a rolled chord) in an {@code int} array,
+ * along with the set of notes packed into two {@code long}s; the hash code
+ * is computed when the chord is constructed, so chords are cheap to use
+ * as map keys.
+ * @author Adam Beneschan
+ */
+public class Chord {
+
+    /** The highest MIDI note. */
+    public static final int MAX_NOTE = 127;
+
+    private final int[] mNotes;
+    private final long mNoteSetLow;    // notes 0-63
+    private final long mNoteSetHigh;   // notes 64-127
+    private final int mInstrument;
+    private final int mDuration;
+    private final int mDelay;
+    private final int mHash;
+
+    /**
+     * Constructs a Chord.
+     * @param notes The notes to be played, in MIDI form (60=middle C), in
+     * the order they are to be started.  The array is copied.
+     * @param instrument The MIDI instrument code (see http://www.midi.org/techspecs/gm1sound.php).
+     * @param duration The time in milliseconds to play the chord (if not 
+     * stopped early).  If the chord is "rolled", the time starts when the
+     * last note is played.
+     * @param delay The time in milliseconds to wait after starting each
+     * note.  If 0, all notes will be played at once; if > 0, the chord will
+     * be "rolled".
+     * @throws IllegalArgumentException if a note is not from 0 to
+     * {@link #MAX_NOTE}.
+     */
+    public Chord(int[] notes, int instrument, int duration, int delay) {
+        this(notes, notes.length, instrument, duration, delay);
+    }
+
+    /**
+     * Constructs a Chord from the first notes in an array.  The other
+     * parameters are as for {@link #Chord(int[], int, int, int)}.
+     * @param count The number of notes to use.
+     */
+    Chord(int[] notes, int count, int instrument, int duration, int delay) {
+        mNotes = Arrays.copyOf(notes, count);
+        long low = 0;
+        long high = 0;
+        for (int note : mNotes) {
+            if (note < 0 || note > MAX_NOTE)
+                throw new IllegalArgumentException("Note out of range: " + note);
+            if (note < 64)
+                low |= 1L << note;
+            else
+                high |= 1L << (note - 64);
+        }
+        mNoteSetLow = low;
+        mNoteSetHigh = high;
+        mInstrument = instrument;
+        mDuration = duration;
+        mDelay = delay;
+
+        int h = Arrays.hashCode(mNotes);
+        h = 31 * h + instrument;
+        h = 31 * h + duration;
+        h = 31 * h + delay;
+        mHash = h;
+    }
+
+    /**
+     * Returns the number of notes.
+     * @return The number of notes in the chord.
+     */
+    public int getNoteCount() {
+        return mNotes.length;
+    }
+
+    /**
+     * Returns one of the notes.
+     * @param i The position of the note in the order the notes are
+     * played, starting at 0.
+     * @return The note, in MIDI form.
+     */
+    public int getNote(int i) {
+        return mNotes[i];
+    }
+
+    /** 
+     * Returns the notes, in the order they are played.
+     * @return A new array holding the notes.
+     */
+    public int[] getNotes() {
+        return mNotes.clone();
+    }   
+
+    /**
+     * Tests whether the chord has a note.
+     * @param note The note, in MIDI form.
+     * @return {@code true} if the note is in the chord.
+     */
+    public boolean containsNote(int note) {
+        if (note < 0 || note > MAX_NOTE)
+            return false;
+        if (note < 64)
+            return (mNoteSetLow & (1L << note)) != 0;
+        return (mNoteSetHigh & (1L << (note - 64))) != 0;
+    }
+
+    /**
+     * Tests whether this chord's notes start with all the notes of another
+     * chord, in the same order.  Only the notes are compared.
+     * @param other The other chord.
+     * @return {@code true} if the first notes of this chord are the notes
+     * of {@code other}.
+     */
+    public boolean startsWith(Chord other) {
+        int n = other.mNotes.length;
+        if (n > mNotes.length)
+            return false;
+        // A quick test: every note of the other chord must be in this one
+        if ((other.mNoteSetLow & ~mNoteSetLow) != 0 || (other.mNoteSetHigh & ~mNoteSetHigh) != 0)
+            return false;
+        for (int i = 0; i < n; i++) {
+            if (mNotes[i] != other.mNotes[i])
+                return false;
+        }
+        return true;
+    }
+
+    /** 
+     * Returns the instrument code.
+     * @return The MIDI instrument code.
+     */
+    public int getInstrument() {
+        return mInstrument;
+    }   
+    
+
+    /** 
+     * Returns the time the chord should play.
+     * @return The time the chord should play, in milliseconds, starting
+     * with the start of the last note if the chord is rolled.
+     */
+    public int getDuration() {
+        return mDuration;
+    }   
+    
+
+    /** 
+     * Returns the delay between notes.
+     * @return The delay between notes, in milliseconds.
+     */
+    public int getDelay() {
+        return mDelay;
+    }   
+
+    /**
+     * Tests whether two chords will sound the same: same notes in the
+     * same order, same instrument, duration and delay.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Chord))
+            return false;
+        Chord other = (Chord) o;
+        return mHash == other.mHash
+            && mInstrument == other.mInstrument
+            && mDuration == other.mDuration
+            && mDelay == other.mDelay
+            && mNoteSetLow == other.mNoteSetLow
+            && mNoteSetHigh == other.mNoteSetHigh
+            && Arrays.equals(mNotes, other.mNotes);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    @Override
+    public String toString() {
+        return "Chord" + Arrays.toString(mNotes) + "[instrument=" + mInstrument
+            + ", duration=" + mDuration + ", delay=" + mDelay + "]";
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * 
+ */
+package com.adambeneschan.pitchpipe;
+
+import java.util.Arrays;
+
+/**
+ * Class that holds a chord that can be added to, one note at a time.
+ * @author Adam Beneschan
+ *
+ */
+public class ChordBuilder {
+
+    private int[] mNotes;
+    private int mCount = 0;
+    private PlayStoppedListener mListener = null;
+    
+    private static ChordSink sSink = null;
+    
+    /**
+     * Constructs a new Chord.
+     */
+    public ChordBuilder() {
+        mNotes = new int[8];
+    }
+    
+    /**
+     * Sets where chords are sent by {@code play}, normally the
+     * {@code ChordPlayer}.  Until this is called, playing does nothing.
+     * @param sink The sink.
+     */
+    public static void setSink(ChordSink sink) {
+        sSink = sink;
+    }
+    
+    /**
+     * Removes all notes from the chord.
+     */
+    public void clear() {
+        mCount = 0;
+    }
+    
+    /**
+     * Adds a note to the chord.
+     * @param note The note, as a MIDI note (60=middle C).
+     */
+    public void add(int note) {
+        if (mCount == mNotes.length)
+            mNotes = Arrays.copyOf(mNotes, mCount * 2);
+        mNotes[mCount++] = note;
+    }
+    
+    /**
+     * Changes the last note added to the chord.
+     * @param note The new note, as a MIDI note (60=middle C).
+     */
+    public void changeLast(int note) {
+        if (mCount == 0)
+            add(note);
+        else
+            mNotes[mCount-1] = note;
+    }
+    
+    /**
+     * Registers a listener to be called when this chord stops playing.
+     * Only one listener can be registered for a chord.  The listener in
+     * effect when {@code play} is called will be used; calling
+     * {@code setPlayStoppedListener} after {@code play} will not affect
+     * the previous {@code play}.
+     * @param listener The listener to register ({@code null} means no
+     * listener will be called).
+     */
+    public void setPlayStoppedListener(PlayStoppedListener listener) {
+        mListener = listener;
+    } 
+    
+    /**
+     * Plays a chord that contains the current notes of the chord.  (The
+     * playing will not be affected if changes are made to this Chord while
+     * the chord is still being played.)
+     * @param instrument The MIDI instrument code (see http://www.midi.org/techspecs/gm1sound.php).
+     * @param duration The time in milliseconds to play the chord (if not 
+     * stopped early).  If the chord is "rolled", the time starts when the
+     * last note is played.
+     * @param delay The time in milliseconds to wait after starting each
+     * note.  If 0, all notes will be played at once; if > 0, the chord will
+     * be "rolled".
+     */
+    public void play(int instrument, int duration, int delay) {
+        ChordSink sink = sSink;
+        if (sink != null)
+            sink.play(toChord(instrument, duration, delay), mListener);
+    }
+    
+    /**
+     * Returns a Chord that contains the current notes of the chord.  (The
+     * Chord will not be affected if changes are made to this ChordBuilder.)
+     * The parameters are the same as for {@link #play}.
+     * @param instrument The MIDI instrument code.
+     * @param duration The time in milliseconds to play the chord.
+     * @param delay The time in milliseconds to wait after starting each
+     * note.
+     * @return The Chord.
+     */
+    public Chord toChord(int instrument, int duration, int delay) {
+        return new Chord(mNotes, mCount, instrument, duration, delay);
+    }
+    
+    /**
+     * Gets ready to play a chord that contains the current notes of the
+     * chord, in case it is played next (see {@link ChordSink#prefetch}).
+     * The parameters are the same as for {@link #play}.
+     * @param instrument The MIDI instrument code.
+     * @param duration The time in milliseconds to play the chord.
+     * @param delay The time in milliseconds to wait after starting each
+     * note.
+     */
+    public void prefetch(int instrument, int duration, int delay) {
+        ChordSink sink = sSink;
+        if (sink != null)
+            sink.prefetch(toChord(instrument, duration, delay));
+    }
+    
+    /**
+     * Plays the chord after a note has been added to it.  If the chord
+     * without that note is still sounding, and the player can add notes to
+     * a sounding chord, only the new note is started and the others keep
+     * going; otherwise the whole chord is played, unrolled.
+     * @param instrument The MIDI instrument code.
+     * @param duration The time in milliseconds to hold the chord, counted
+     * from when the new note starts.
+     */
+    public void playAdded(int instrument, int duration) {
+        ChordSink sink = sSink;
+        if (sink != null)
+            sink.playAdded(toChord(instrument, duration, 0), mListener);
+    }
+    
+}
@@ -0,0 +1,560 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A library of songs, each with a title, a key and a starting chord, kept
+ * in a compact binary file that is mapped into memory rather than read
+ * and parsed.  Opening a library only checks its header, so it takes the
+ * same time however many songs it holds; songs are read straight from the
+ * mapped file when they are asked for.  Titles can be searched with
+ * {@link #search}, which uses two indexes stored in the file: the songs
+ * sorted by title, for prefixes, and a trigram index (each run of three
+ * characters in a title, with the songs it occurs in), for words in the
+ * middle of titles.  Searches ignore case.
+ * <p>
+ * The file holds a header, a fixed-size record for each song, the titles
+ * (as UTF-16 characters), the notes (one byte each), the song numbers in
+ * title order, the trigram table (sorted) and the lists of song numbers
+ * for each trigram.  Libraries are made with {@link #write}.
+ * @author Adam Beneschan
+ */
+public class ChordLibrary {
+
+    /** Added to the key of a song in a minor key (see {@link Song#getKey}). */
+    public static final int MINOR = 12;
+
+    /** The key of a song whose key isn't known. */
+    public static final int NO_KEY = -1;
+
+    private static final int sMAGIC = 0x5050434C;   // "PPCL"
+    private static final int sVERSION = 1;
+    private static final int sHEADER_SIZE = 40;
+    private static final int sRECORD_SIZE = 24;
+    private static final int sTRIGRAM_SIZE = 16;
+    private static final int sMAX_NOTES = 255;
+
+    private static final String[] sKEY_NAMES = {
+        "C", "Db", "D", "Eb", "E", "F", "F#", "G", "Ab", "A", "Bb", "B"
+    };
+
+    /**
+     * A song to be put in a library.
+     */
+    public static class Song {
+        private final String mTitle;
+        private final int mKey;
+        private final Chord mChord;
+
+        /**
+         * Constructs a Song.
+         * @param title The title.
+         * @param key The key: the tonic as a pitch class (0=C, 1=C#/Db,
+         * ... 11=B), plus {@link #MINOR} for a minor key; or
+         * {@link #NO_KEY}.
+         * @param chord The starting chord.
+         */
+        public Song(String title, int key, Chord chord) {
+            if (key < NO_KEY || key >= 2 * MINOR)
+                throw new IllegalArgumentException("Bad key: " + key);
+            mTitle = title;
+            mKey = key;
+            mChord = chord;
+        }
+
+        /**
+         * Returns the title.
+         * @return The title.
+         */
+        public String getTitle() {
+            return mTitle;
+        }
+
+        /**
+         * Returns the key.
+         * @return The key, as passed to the constructor.
+         */
+        public int getKey() {
+            return mKey;
+        }
+
+        /**
+         * Returns the starting chord.
+         * @return The chord.
+         */
+        public Chord getChord() {
+            return mChord;
+        }
+    }
+
+    // Field offsets in the header
+    private static final int sH_COUNT = 8;
+    private static final int sH_TRIGRAMS = 12;
+    private static final int sH_TITLES_AT = 16;
+    private static final int sH_NOTES_AT = 20;
+    private static final int sH_SORTED_AT = 24;
+    private static final int sH_TRIGRAMS_AT = 28;
+    private static final int sH_POSTINGS_AT = 32;
+    private static final int sH_LENGTH = 36;
+
+    // Field offsets in a song record
+    private static final int sR_TITLE = 0;
+    private static final int sR_TITLE_LENGTH = 4;
+    private static final int sR_INSTRUMENT = 6;
+    private static final int sR_NOTES = 8;
+    private static final int sR_NOTE_COUNT = 12;
+    private static final int sR_KEY = 13;
+    private static final int sR_DURATION = 16;
+    private static final int sR_DELAY = 20;
+
+    private final ByteBuffer mBuf;
+    private final int mCount;
+    private final int mTrigrams;
+    private final int mTitlesAt;
+    private final int mNotesAt;
+    private final int mSortedAt;
+    private final int mTrigramsAt;
+    private final int mPostingsAt;
+
+    /**
+     * Constructs a library from its contents.
+     * @param buf The contents of a library file, from position 0.
+     * @throws IOException if it isn't a library, or was written by a
+     * different version of this class.
+     */
+    ChordLibrary(ByteBuffer buf) throws IOException {
+        mBuf = buf;
+        if (buf.limit() < sHEADER_SIZE || buf.getInt(0) != sMAGIC)
+            throw new IOException("Not a chord library");
+        if (buf.getShort(4) != sVERSION)
+            throw new IOException("Unsupported chord library version " + buf.getShort(4));
+        if (buf.getInt(sH_LENGTH) != buf.limit())
+            throw new IOException("Chord library is truncated");
+        mCount = buf.getInt(sH_COUNT);
+        mTrigrams = buf.getInt(sH_TRIGRAMS);
+        mTitlesAt = buf.getInt(sH_TITLES_AT);
+        mNotesAt = buf.getInt(sH_NOTES_AT);
+        mSortedAt = buf.getInt(sH_SORTED_AT);
+        mTrigramsAt = buf.getInt(sH_TRIGRAMS_AT);
+        mPostingsAt = buf.getInt(sH_POSTINGS_AT);
+        if (mCount < 0 || mTrigrams < 0
+                || sHEADER_SIZE + (long) mCount * sRECORD_SIZE > mTitlesAt
+                || mTitlesAt > mNotesAt || mNotesAt > mSortedAt
+                || mSortedAt + 4L * mCount > mTrigramsAt
+                || mTrigramsAt + (long) mTrigrams * sTRIGRAM_SIZE > mPostingsAt
+                || mPostingsAt > buf.limit())
+            throw new IOException("Chord library is damaged");
+    }
+
+    /**
+     * Opens a library file by mapping it into memory.  Nothing but the
+     * header is read.
+     * @param f The file.
+     * @return The library.
+     * @throws IOException if the file can't be mapped or isn't a library.
+     */
+    public static ChordLibrary open(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // The mapping stays valid after the file is closed
+            return new ChordLibrary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the number of songs.
+     * @return The number of songs.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the title of a song.
+     * @param song The song number, from 0.
+     * @return The title.
+     */
+    public String getTitle(int song) {
+        int r = record(song);
+        int at = mTitlesAt + 2 * mBuf.getInt(r + sR_TITLE);
+        int length = mBuf.getShort(r + sR_TITLE_LENGTH) & 0xFFFF;
+        char[] title = new char[length];
+        for (int i = 0; i < length; i++)
+            title[i] = mBuf.getChar(at + 2 * i);
+        return new String(title);
+    }
+
+    /**
+     * Returns the key of a song.
+     * @param song The song number.
+     * @return The key (see {@link Song#getKey}).
+     */
+    public int getKey(int song) {
+        return mBuf.get(record(song) + sR_KEY);
+    }
+
+    /**
+     * Returns the number of notes in a song's starting chord.
+     * @param song The song number.
+     * @return The number of notes.
+     */
+    public int getNoteCount(int song) {
+        return mBuf.get(record(song) + sR_NOTE_COUNT) & 0xFF;
+    }
+
+    /**
+     * Copies the notes of a song's starting chord into an array, without
+     * creating any objects.
+     * @param song The song number.
+     * @param notes Where to put the notes; must have room for
+     * {@link #getNoteCount} of them.
+     * @return The number of notes.
+     */
+    public int getNotes(int song, int[] notes) {
+        int r = record(song);
+        int count = mBuf.get(r + sR_NOTE_COUNT) & 0xFF;
+        int at = mNotesAt + mBuf.getInt(r + sR_NOTES);
+        for (int i = 0; i < count; i++)
+            notes[i] = mBuf.get(at + i);
+        return count;
+    }
+
+    /**
+     * Returns a song's starting chord.
+     * @param song The song number.
+     * @return The chord.
+     */
+    public Chord getChord(int song) {
+        int r = record(song);
+        int[] notes = new int[getNoteCount(song)];
+        getNotes(song, notes);
+        return new Chord(notes, notes.length, mBuf.getShort(r + sR_INSTRUMENT),
+                         mBuf.getInt(r + sR_DURATION), mBuf.getInt(r + sR_DELAY));
+    }
+
+    /**
+     * Finds the songs whose titles match what the user has typed so far.
+     * A query of one or two characters matches titles that start with it,
+     * and the songs are returned in title order.  A longer query matches
+     * titles that contain it anywhere, and the songs are returned in the
+     * order they are in the library.  Case is ignored.
+     * @param query What to look for.
+     * @param results Where to put the song numbers found.
+     * @return The number of songs found, at most {@code results.length}.
+     */
+    public int search(String query, int[] results) {
+        String q = normalize(query.trim());
+        if (q.length() == 0 || results.length == 0)
+            return 0;
+        if (q.length() < 3)
+            return searchPrefix(q, results);
+
+        // Only the songs listed under the query's rarest trigram can
+        // match; check each of those.
+        int best = -1;
+        int bestCount = Integer.MAX_VALUE;
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            int t = findTrigram(trigram(q, i));
+            if (t < 0)
+                return 0;
+            int count = mBuf.getInt(mTrigramsAt + t * sTRIGRAM_SIZE + 12);
+            if (count < bestCount) {
+                best = t;
+                bestCount = count;
+            }
+        }
+        int postings = mPostingsAt + 4 * mBuf.getInt(mTrigramsAt + best * sTRIGRAM_SIZE + 8);
+        int found = 0;
+        for (int i = 0; i < bestCount && found < results.length; i++) {
+            int song = mBuf.getInt(postings + 4 * i);
+            if (titleContains(song, q))
+                results[found++] = song;
+        }
+        return found;
+    }
+
+    /**
+     * Returns the name of a key, e.g. "F#" or "Ebm".
+     * @param key The key (see {@link Song#getKey}).
+     * @return The name, or "" for {@link #NO_KEY}.
+     */
+    public static String keyName(int key) {
+        if (key < 0 || key >= 2 * MINOR)
+            return "";
+        return (key >= MINOR) ? sKEY_NAMES[key - MINOR] + "m" : sKEY_NAMES[key];
+    }
+
+    /**
+     * Returns the key with a name, e.g. "F#", "Gb" or "ebm".
+     * @param name The name: a letter, an optional sharp ("#") or flat
+     * ("b"), and "m" for a minor key.  Case is ignored.
+     * @return The key (see {@link Song#getKey}), or {@link #NO_KEY} for
+     * an empty name or "-".
+     * @throws IllegalArgumentException if the name isn't a key.
+     */
+    public static int parseKey(String name) {
+        String s = name.trim();
+        if (s.length() == 0 || s.equals("-"))
+            return NO_KEY;
+        int letter = "cdefgab".indexOf(Character.toLowerCase(s.charAt(0)));
+        if (letter < 0)
+            throw new IllegalArgumentException("Bad key: " + name);
+        int key = new int[] { 0, 2, 4, 5, 7, 9, 11 }[letter];
+        int i = 1;
+        if (i < s.length() && s.charAt(i) == '#') {
+            key++;
+            i++;
+        } else if (i < s.length() && s.charAt(i) == 'b') {
+            key--;
+            i++;
+        }
+        key = (key + MINOR) % MINOR;
+        if (i < s.length() && Character.toLowerCase(s.charAt(i)) == 'm') {
+            key += MINOR;
+            i++;
+        }
+        if (i != s.length())
+            throw new IllegalArgumentException("Bad key: " + name);
+        return key;
+    }
+
+    /**
+     * Writes a library.
+     * @param songs The songs, in the order they are to be numbered.
+     * @param out Where to write the library.  The stream is not closed.
+     * @throws IOException if writing to {@code out} results in an
+     * exception.
+     * @throws IllegalArgumentException if a title is longer than 65535
+     * characters or a chord has more than 255 notes.
+     */
+    public static void write(List<Song> songs, OutputStream out) throws IOException {
+        final int count = songs.size();
+        final String[] normalized = new String[count];
+        int titleChars = 0;
+        int noteBytes = 0;
+        for (int i = 0; i < count; i++) {
+            Song s = songs.get(i);
+            if (s.getTitle().length() > 0xFFFF || s.getChord().getNoteCount() > sMAX_NOTES)
+                throw new IllegalArgumentException("Song too large: " + s.getTitle());
+            normalized[i] = normalize(s.getTitle());
+            titleChars += s.getTitle().length();
+            noteBytes += s.getChord().getNoteCount();
+        }
+
+        // The song numbers in title order
+        Integer[] sorted = new Integer[count];
+        for (int i = 0; i < count; i++)
+            sorted[i] = i;
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return normalized[a].compareTo(normalized[b]);
+            }
+        });
+
+        // The songs each trigram occurs in, in song order
+        Map<Long, List<Integer>> index = new HashMap<Long, List<Integer>>();
+        int postingCount = 0;
+        for (int i = 0; i < count; i++) {
+            String title = normalized[i];
+            for (int j = 0; j + 3 <= title.length(); j++) {
+                Long t = trigram(title, j);
+                List<Integer> list = index.get(t);
+                if (list == null) {
+                    list = new ArrayList<Integer>();
+                    index.put(t, list);
+                }
+                if (list.isEmpty() || list.get(list.size() - 1) != i) {
+                    list.add(i);
+                    postingCount++;
+                }
+            }
+        }
+        List<Long> trigrams = new ArrayList<Long>(index.keySet());
+        Collections.sort(trigrams);
+
+        int titlesAt = sHEADER_SIZE + count * sRECORD_SIZE;
+        int notesAt = titlesAt + 2 * titleChars;
+        int sortedAt = notesAt + noteBytes;
+        int trigramsAt = sortedAt + 4 * count;
+        int postingsAt = trigramsAt + trigrams.size() * sTRIGRAM_SIZE;
+        int length = postingsAt + 4 * postingCount;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(sMAGIC);
+        data.writeShort(sVERSION);
+        data.writeShort(0);
+        data.writeInt(count);
+        data.writeInt(trigrams.size());
+        data.writeInt(titlesAt);
+        data.writeInt(notesAt);
+        data.writeInt(sortedAt);
+        data.writeInt(trigramsAt);
+        data.writeInt(postingsAt);
+        data.writeInt(length);
+        int title = 0;
+        int notes = 0;
+        for (Song s : songs) {
+            Chord c = s.getChord();
+            data.writeInt(title);
+            data.writeShort(s.getTitle().length());
+            data.writeShort(c.getInstrument());
+            data.writeInt(notes);
+            data.writeByte(c.getNoteCount());
+            data.writeByte(s.getKey());
+            data.writeShort(0);
+            data.writeInt(c.getDuration());
+            data.writeInt(c.getDelay());
+            title += s.getTitle().length();
+            notes += c.getNoteCount();
+        }
+        for (Song s : songs)
+            data.writeChars(s.getTitle());
+        for (Song s : songs) {
+            Chord c = s.getChord();
+            for (int i = 0; i < c.getNoteCount(); i++)
+                data.writeByte(c.getNote(i));
+        }
+        for (Integer song : sorted)
+            data.writeInt(song);
+        int posting = 0;
+        for (Long t : trigrams) {
+            int n = index.get(t).size();
+            data.writeLong(t);
+            data.writeInt(posting);
+            data.writeInt(n);
+            posting += n;
+        }
+        for (Long t : trigrams) {
+            for (Integer song : index.get(t))
+                data.writeInt(song);
+        }
+        data.flush();
+        bytes.writeTo(out);
+    }
+
+    private int record(int song) {
+        if (song < 0 || song >= mCount)
+            throw new IndexOutOfBoundsException("No song " + song);
+        return sHEADER_SIZE + song * sRECORD_SIZE;
+    }
+
+    /**
+     * Finds the songs whose titles start with a (normalized) prefix.
+     */
+    private int searchPrefix(String prefix, int[] results) {
+        // Binary search for the first title not less than the prefix
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareTitle(sortedSong(mid), prefix) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        int found = 0;
+        for (int i = low; i < mCount && found < results.length; i++) {
+            int song = sortedSong(i);
+            if (!titleStartsWith(song, prefix))
+                break;
+            results[found++] = song;
+        }
+        return found;
+    }
+
+    private int sortedSong(int i) {
+        return mBuf.getInt(mSortedAt + 4 * i);
+    }
+
+    /**
+     * Returns the index of a trigram in the trigram table, or -1.
+     */
+    private int findTrigram(long t) {
+        int low = 0;
+        int high = mTrigrams - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long key = mBuf.getLong(mTrigramsAt + mid * sTRIGRAM_SIZE);
+            if (key < t)
+                low = mid + 1;
+            else if (key > t)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a song's normalized title with a normalized string, as
+     * {@code String.compareTo} would, without making a String.
+     */
+    private int compareTitle(int song, String s) {
+        int r = record(song);
+        int at = mTitlesAt + 2 * mBuf.getInt(r + sR_TITLE);
+        int length = mBuf.getShort(r + sR_TITLE_LENGTH) & 0xFFFF;
+        int n = Math.min(length, s.length());
+        for (int i = 0; i < n; i++) {
+            char c = Character.toLowerCase(mBuf.getChar(at + 2 * i));
+            if (c != s.charAt(i))
+                return c - s.charAt(i);
+        }
+        return length - s.length();
+    }
+
+    private boolean titleStartsWith(int song, String prefix) {
+        return titleMatchesAt(song, prefix, 0);
+    }
+
+    private boolean titleContains(int song, String s) {
+        int length = mBuf.getShort(record(song) + sR_TITLE_LENGTH) & 0xFFFF;
+        for (int i = 0; i + s.length() <= length; i++) {
+            if (titleMatchesAt(song, s, i))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean titleMatchesAt(int song, String s, int start) {
+        int r = record(song);
+        int at = mTitlesAt + 2 * (mBuf.getInt(r + sR_TITLE) + start);
+        int length = mBuf.getShort(r + sR_TITLE_LENGTH) & 0xFFFF;
+        if (start + s.length() > length)
+            return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.toLowerCase(mBuf.getChar(at + 2 * i)) != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static String normalize(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = Character.toLowerCase(chars[i]);
+        return new String(chars);
+    }
+
+    private static long trigram(String s, int at) {
+        return ((long) s.charAt(at) << 32) | ((long) s.charAt(at + 1) << 16) | s.charAt(at + 2);
+    }
+
+}
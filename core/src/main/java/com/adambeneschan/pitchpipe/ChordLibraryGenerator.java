@@ -0,0 +1,86 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Makes a {@link ChordLibrary} file from a text file, e.g. one exported
+ * from a spreadsheet of the repertoire.  Run with two arguments: the text
+ * file, and the library file to write.  The text file (UTF-8) has one
+ * song per line, with these fields separated by tabs: the key (e.g.
+ * "Eb" or "F#m", or "-"), the MIDI instrument code, the duration and
+ * roll delay in milliseconds, the notes of the starting chord as MIDI
+ * notes separated by commas, and the title.  Blank lines and lines
+ * starting with "#" are skipped.
+ * @author Adam Beneschan
+ */
+public class ChordLibraryGenerator {
+
+    private ChordLibraryGenerator() { }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("usage: ChordLibraryGenerator <text file> <library file>");
+            System.exit(2);
+        }
+        List<ChordLibrary.Song> songs;
+        Reader r = new InputStreamReader(new FileInputStream(args[0]), "UTF-8");
+        try {
+            songs = readSongs(r);
+        } finally {
+            r.close();
+        }
+        FileOutputStream fos = new FileOutputStream(new File(args[1]));
+        try {
+            ChordLibrary.write(songs, fos);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Reads songs in the text form described above.
+     * @param r Where to read them from.
+     * @return The songs, in the order they were read.
+     * @throws IOException if they can't be read or a line is not in the
+     * right form.
+     */
+    public static List<ChordLibrary.Song> readSongs(Reader r) throws IOException {
+        List<ChordLibrary.Song> songs = new ArrayList<ChordLibrary.Song>();
+        BufferedReader br = new BufferedReader(r);
+        String line;
+        int lineNumber = 0;
+        while ((line = br.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().length() == 0 || line.startsWith("#"))
+                continue;
+            String[] fields = line.split("\t", 6);
+            if (fields.length != 6)
+                throw new IOException("Bad song at line " + lineNumber);
+            try {
+                int key = ChordLibrary.parseKey(fields[0]);
+                int instrument = Integer.parseInt(fields[1].trim());
+                int duration = Integer.parseInt(fields[2].trim());
+                int delay = Integer.parseInt(fields[3].trim());
+                String[] noteFields = fields[4].trim().split(",");
+                int[] notes = new int[noteFields.length];
+                for (int i = 0; i < notes.length; i++)
+                    notes[i] = Integer.parseInt(noteFields[i].trim());
+                songs.add(new ChordLibrary.Song(fields[5].trim(), key,
+                                                new Chord(notes, instrument, duration, delay)));
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException is one of these
+                throw new IOException("Bad song at line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return songs;
+    }
+
+}
@@ -0,0 +1,288 @@
+package com.adambeneschan.pitchpipe;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Renders a chord directly to 16-bit mono PCM samples with the PCM
+ * synthesizer, as an alternative to creating a MIDI file and having the
+ * platform play it.  A renderer mixes up to a fixed number of voices;
+ * after {@link #start}, the caller pulls samples with {@link #read} until
+ * it returns 0.  If a {@link NoteSampleCache} is supplied, the chord is
+ * mixed from pre-rendered notes instead of being synthesized.  This class
+ * does not depend on Android, so its output and speed can be tested on
+ * any JVM.
+ * @author Adam Beneschan
+ */
+public class ChordRenderer {
+
+    /** The default sample rate, in Hz. */
+    public static final int DEFAULT_SAMPLE_RATE = 44100;
+
+    /** The default maximum number of notes that can sound at once. */
+    public static final int DEFAULT_MAX_VOICES = 16;
+
+    // Volume of a single voice, leaving headroom for several at once
+    private static final float sVOICE_GAIN = 0.4F;
+
+    private final int mSampleRate;
+    private final SynthVoice[] mVoices;
+    private float[] mMix = new float[0];
+    private int mVoiceCount = 0;
+    private float mGain = sVOICE_GAIN;
+    private long mLength = 0;
+
+    // Used when mixing pre-rendered notes from a NoteSampleCache
+    private boolean mUseCache = false;
+    private final ShortBuffer[] mCached;
+    private final long[] mCachedStart;
+    private final float[] mReleaseGain;
+    private long mReleaseAt;
+    private long mCachedEnd;
+    private float mReleaseRatio;
+    private long mPosition;
+
+    /**
+     * Constructs a ChordRenderer with the default sample rate and number
+     * of voices.
+     */
+    public ChordRenderer() {
+        this(DEFAULT_SAMPLE_RATE, DEFAULT_MAX_VOICES);
+    }
+
+    /**
+     * Constructs a ChordRenderer.
+     * @param sampleRate The output sample rate, in Hz.
+     * @param maxVoices The maximum number of notes that can sound at once;
+     * notes beyond this are not played.
+     */
+    public ChordRenderer(int sampleRate, int maxVoices) {
+        mSampleRate = sampleRate;
+        mVoices = new SynthVoice[maxVoices];
+        for (int i = 0; i < maxVoices; i++)
+            mVoices[i] = new SynthVoice();
+        mCached = new ShortBuffer[maxVoices];
+        mCachedStart = new long[maxVoices];
+        mReleaseGain = new float[maxVoices];
+    }
+
+    /**
+     * Renders a whole chord at once.
+     * @param c The chord to play.
+     * @param fade The instrument's approximate fade-out time (see
+     * {@link MidiInstrument#getFade()}).
+     * @param sampleRate The output sample rate, in Hz.
+     * @return The samples, including the release of the last notes.
+     */
+    public static short[] render(Chord c, int fade, int sampleRate) {
+        ChordRenderer r = new ChordRenderer(sampleRate, Math.max(1, c.getNoteCount()));
+        r.start(c, fade);
+        short[] out = new short[(int) r.lengthInFrames()];
+        int n = 0;
+        while (n < out.length) {
+            int k = r.read(out, n, out.length - n);
+            if (k == 0)
+                break;
+            n += k;
+        }
+        return out;
+    }
+
+    /**
+     * Returns the sample rate.
+     * @return The output sample rate, in Hz.
+     */
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * Starts rendering a chord.  Any chord that was being rendered is cut
+     * off.  Notes are started {@code c.getDelay()} ms apart, and all of
+     * them are released {@code c.getDuration()} ms after the last one
+     * starts, as with a MIDI file made by {@link MidiFileCreator}.
+     * @param c The chord to play.
+     * @param fade The instrument's approximate fade-out time (see
+     * {@link MidiInstrument#getFade()}).
+     */
+    public void start(Chord c, int fade) {
+        Timbre timbre = Timbre.forInstrument(c.getInstrument(), fade);
+        int n = Math.min(c.getNoteCount(), mVoices.length);
+        long delay = frames(c.getDelay());
+        long releaseAt = delay * (n - 1) + frames(c.getDuration());
+        mUseCache = false;
+        for (SynthVoice v : mVoices)
+            v.kill();
+        for (int i = 0; i < n; i++)
+            mVoices[i].start(c.getNote(i), timbre, mSampleRate, delay * i, releaseAt);
+        mVoiceCount = n;
+        mGain = voiceGain(n);
+        mLength = releaseAt + frames(timbre.getRelease()) + 1;
+    }
+
+    /**
+     * Starts rendering a chord, mixing it from pre-rendered notes if
+     * possible.  The result sounds the same as {@link #start(Chord, int)}.
+     * If the cache's sample rate differs from this renderer's, or the
+     * notes must be held longer than the cache's hold time, the chord is
+     * synthesized instead.  Notes missing from the cache are rendered and
+     * added to it.
+     * @param c The chord to play.
+     * @param fade The instrument's approximate fade-out time (see
+     * {@link MidiInstrument#getFade()}).
+     * @param cache The cache of pre-rendered notes.
+     */
+    public void start(Chord c, int fade, NoteSampleCache cache) {
+        int n = Math.min(c.getNoteCount(), mVoices.length);
+        long delay = frames(c.getDelay());
+        long releaseAt = delay * (n - 1) + frames(c.getDuration());
+        if (cache.getSampleRate() != mSampleRate || releaseAt > frames(cache.getHoldTime())) {
+            start(c, fade);
+            return;
+        }
+
+        Timbre timbre = Timbre.forInstrument(c.getInstrument(), fade);
+        for (SynthVoice v : mVoices)
+            v.kill();
+        for (int i = 0; i < n; i++) {
+            mCached[i] = cache.get(c.getInstrument(), fade, c.getNote(i));
+            mCachedStart[i] = delay * i;
+            mReleaseGain[i] = 1F;
+        }
+        mVoiceCount = n;
+        mUseCache = true;
+        mPosition = 0;
+        mReleaseAt = releaseAt;
+        mCachedEnd = releaseAt + frames(timbre.getRelease());
+        mLength = mCachedEnd + 1;
+
+        // The cached notes keep fading at the sustain rate after our
+        // release point; scaling them by (release/fade)^t turns that into
+        // the release rate.
+        mReleaseRatio = SynthVoice.decayFactor(timbre.getRelease(), mSampleRate)
+                        / SynthVoice.decayFactor(fade, mSampleRate);
+        mGain = 1F / (float) Math.sqrt(Math.max(1, n));
+    }
+
+    /**
+     * Returns an upper bound on the length of the chord being rendered.
+     * @return The number of frames until the last note has died away.
+     */
+    public long lengthInFrames() {
+        return mLength;
+    }
+
+    /**
+     * Releases all notes now, so that they die away over the instrument's
+     * release time instead of stopping abruptly.
+     */
+    public void releaseAll() {
+        if (mUseCache) {
+            if (mPosition < mReleaseAt) {
+                mCachedEnd -= mReleaseAt - mPosition;
+                mReleaseAt = mPosition;
+            }
+            return;
+        }
+        for (int i = 0; i < mVoiceCount; i++)
+            mVoices[i].release();
+    }
+
+    /**
+     * Tests whether the chord has finished.
+     * @return {@code true} if no voice is sounding or waiting to start.
+     */
+    public boolean isDone() {
+        if (mUseCache)
+            return mPosition >= mCachedEnd;
+        for (int i = 0; i < mVoiceCount; i++) {
+            if (mVoices[i].isActive())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Renders the next samples of the chord.
+     * @param out The array that receives the samples.
+     * @param offset The index in {@code out} of the first sample.
+     * @param frames The maximum number of samples to render.
+     * @return The number of samples rendered; 0 if the chord is done.
+     */
+    public int read(short[] out, int offset, int frames) {
+        if (isDone())
+            return 0;
+        if (mMix.length < frames)
+            mMix = new float[frames];
+        for (int i = 0; i < frames; i++)
+            mMix[i] = 0F;
+        if (mUseCache) {
+            mixCached(frames);
+            mPosition += frames;
+        } else {
+            for (int i = 0; i < mVoiceCount; i++)
+                mVoices[i].render(mMix, 0, frames, mGain);
+        }
+        toPcm16(mMix, 0, out, offset, frames);
+        return frames;
+    }
+
+    /**
+     * Mixes the next frames of the cached notes into mMix.
+     */
+    private void mixCached(int frames) {
+        float scale = mGain / 32767F;
+        for (int v = 0; v < mVoiceCount; v++) {
+            ShortBuffer samples = mCached[v];
+            int limit = samples.limit();
+            float g = mReleaseGain[v];
+            for (int i = 0; i < frames; i++) {
+                long t = mPosition + i;
+                if (t >= mCachedEnd)
+                    break;
+                long k = t - mCachedStart[v];
+                if (k < 0)
+                    continue;
+                if (k >= limit)
+                    break;
+                if (t >= mReleaseAt)
+                    g *= mReleaseRatio;
+                mMix[i] += samples.get((int) k) * scale * g;
+            }
+            mReleaseGain[v] = g;
+        }
+    }
+
+    /**
+     * Returns the gain applied to each voice of a synthesized chord, so
+     * that chords with more notes aren't much louder.
+     * @param notes The number of notes in the chord.
+     * @return The gain.
+     */
+    static float voiceGain(int notes) {
+        return sVOICE_GAIN / (float) Math.sqrt(Math.max(1, notes));
+    }
+
+    /**
+     * Converts mixed samples to 16-bit PCM, clipping anything out of range.
+     * @param mix The mixed samples, nominally in the range -1 to 1.
+     * @param from The index of the first sample in {@code mix}.
+     * @param out The array that receives the PCM samples.
+     * @param offset The index in {@code out} of the first sample.
+     * @param frames The number of samples.
+     */
+    public static void toPcm16(float[] mix, int from, short[] out, int offset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            float v = mix[from + i];
+            if (v > 1F)
+                v = 1F;
+            else if (v < -1F)
+                v = -1F;
+            out[offset + i] = (short) (v * 32767F);
+        }
+    }
+
+    private long frames(int time) {
+        return (long) time * mSampleRate / 1000;
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.adambeneschan.pitchpipe;
+
+/**
+ * Interface definition for something that can play the chords built by a
+ * {@link ChordBuilder}.  In the app this is the {@code ChordPlayer}.
+ * @author Adam Beneschan
+ */
+public interface ChordSink {
+
+    /**
+     * Starts playing a chord, stopping any chord that is already playing.
+     * @param chord The chord to be played.
+     * @param l If non-null, called back when the play of this chord has
+     * stopped.
+     */
+    public void play(Chord chord, PlayStoppedListener l);
+
+    /**
+     * Plays a chord that is the chord now playing with one note added at
+     * the end, without restarting the notes already sounding if possible.
+     * @param chord The whole chord, including the added note.
+     * @param l If non-null, called back when the play of this chord has
+     * stopped.
+     */
+    public void playAdded(Chord chord, PlayStoppedListener l);
+
+    /**
+     * Gets ready to play a chord that is likely to be played next.
+     * @param chord The chord.
+     */
+    public void prefetch(Chord chord);
+
+}
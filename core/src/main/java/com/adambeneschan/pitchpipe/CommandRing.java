@@ -0,0 +1,130 @@
+package com.adambeneschan.pitchpipe;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free ring buffer that passes commands from one producer thread
+ * (the UI) to one consumer thread (the audio render thread).  Each command
+ * is a type code, two integer arguments and an optional object reference,
+ * stored in preallocated slots, so neither side allocates or blocks.  The
+ * consumer reads a command with {@link #poll} and then looks at it with
+ * {@link #type}, {@link #arg1}, {@link #arg2} and {@link #obj}.
+ * @author Adam Beneschan
+ */
+public class CommandRing {
+
+    private final int mMask;
+    private final int[] mTypes;
+    private final int[] mArgs1;
+    private final int[] mArgs2;
+    private final Object[] mObjs;
+
+    // mTail is the next slot the producer will write; mHead is the next
+    // slot the consumer will read.  Each is written by only one thread;
+    // lazySet publishes the slot contents before the new position.
+    private final AtomicLong mHead = new AtomicLong(0);
+    private final AtomicLong mTail = new AtomicLong(0);
+
+    // The command most recently polled; touched only by the consumer
+    private int mType;
+    private int mArg1;
+    private int mArg2;
+    private Object mObj;
+
+    /**
+     * Constructs a CommandRing.
+     * @param capacity The maximum number of commands that can be waiting;
+     * rounded up to a power of 2.
+     */
+    public CommandRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mMask = size - 1;
+        mTypes = new int[size];
+        mArgs1 = new int[size];
+        mArgs2 = new int[size];
+        mObjs = new Object[size];
+    }
+
+    /**
+     * Adds a command.  Must only be called from the producer thread.
+     * @param type The command type; any value but 0.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @param obj An object argument, or {@code null}.
+     * @return {@code true} if the command was added, {@code false} if the
+     * ring is full.
+     */
+    public boolean offer(int type, int arg1, int arg2, Object obj) {
+        long tail = mTail.get();
+        if (tail - mHead.get() > mMask)
+            return false;
+        int i = (int) tail & mMask;
+        mTypes[i] = type;
+        mArgs1[i] = arg1;
+        mArgs2[i] = arg2;
+        mObjs[i] = obj;
+        mTail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest command, making it the current command.  Must
+     * only be called from the consumer thread.
+     * @return {@code true} if there was a command; {@code false} if the
+     * ring was empty, in which case the current command is unchanged.
+     */
+    public boolean poll() {
+        long head = mHead.get();
+        if (head == mTail.get())
+            return false;
+        int i = (int) head & mMask;
+        mType = mTypes[i];
+        mArg1 = mArgs1[i];
+        mArg2 = mArgs2[i];
+        mObj = mObjs[i];
+        mObjs[i] = null;   // don't keep the object alive from the ring
+        mHead.lazySet(head + 1);
+        return true;
+    }
+
+    /**
+     * Tests whether there are no commands waiting.
+     * @return {@code true} if the ring is empty.
+     */
+    public boolean isEmpty() {
+        return mHead.get() == mTail.get();
+    }
+
+    /**
+     * Returns the type of the current command.
+     * @return The type passed to {@link #offer}.
+     */
+    public int type() {
+        return mType;
+    }
+
+    /**
+     * Returns the first argument of the current command.
+     * @return The first argument passed to {@link #offer}.
+     */
+    public int arg1() {
+        return mArg1;
+    }
+
+    /**
+     * Returns the second argument of the current command.
+     * @return The second argument passed to {@link #offer}.
+     */
+    public int arg2() {
+        return mArg2;
+    }
+
+    /**
+     * Returns the object argument of the current command.
+     * @return The object passed to {@link #offer}.
+     */
+    public Object obj() {
+        return mObj;
+    }
+
+}
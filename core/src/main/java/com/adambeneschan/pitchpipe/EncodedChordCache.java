@@ -0,0 +1,158 @@
+package com.adambeneschan.pitchpipe;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of encoded MIDI files, so that a chord that is played repeatedly
+ * (e.g. with Replay) is only encoded by {@link MidiFileCreator} once.
+ * Entries are keyed on the chord's contents (notes, instrument, duration
+ * and delay).  The cache is bounded by an approximate memory budget; when
+ * it is exceeded, the least recently used entries are evicted.  There
+ * should be only one instance of this class in an app.
+ * @author Adam Beneschan
+ */
+public class EncodedChordCache {
+
+    /** The default memory budget, in bytes. */
+    public static final int DEFAULT_BUDGET = 64 * 1024;
+
+    // Approximate memory used by an entry in addition to the encoded
+    // bytes (the key, its note list, the map entry, the array header).
+    private static final int sENTRY_OVERHEAD = 128;
+
+    private static EncodedChordCache sCache = null;
+
+    private final LinkedHashMap<Chord, byte[]> mEntries;
+    private int mBudget = DEFAULT_BUDGET;
+    private int mSize = 0;
+    private int mHits = 0;
+    private int mMisses = 0;
+    private int mEvictions = 0;
+
+    private EncodedChordCache() {
+        // access-order LinkedHashMap: iteration starts at the least
+        // recently used entry
+        mEntries = new LinkedHashMap<Chord, byte[]>(16, 0.75F, true);
+    }
+
+    /**
+     * Returns the single instance of this class.
+     * @return The single instance of this class.
+     */
+    public static synchronized EncodedChordCache getInstance() {
+        if (sCache == null) {
+            sCache = new EncodedChordCache();
+        }
+        return sCache;
+    }
+
+    /**
+     * Returns the encoded MIDI file for a chord, encoding it if it is not
+     * already in the cache.
+     * @param c The chord to play.
+     * @return The bytes of the MIDI file.  The caller must not modify the
+     * array.
+     */
+    public byte[] get(Chord c) {
+        synchronized (this) {
+            byte[] data = mEntries.get(c);
+            if (data != null) {
+                mHits++;
+                return data;
+            }
+            mMisses++;
+        }
+
+        // Encode outside the lock; if two threads miss on the same chord
+        // at the same time, the second put just replaces the first.
+        byte[] data = MidiFileCreator.encode(c);
+        synchronized (this) {
+            byte[] old = mEntries.put(c, data);
+            if (old != null)
+                mSize -= entrySize(old);
+            mSize += entrySize(data);
+            trim();
+        }
+        return data;
+    }
+
+    /**
+     * Sets the memory budget.  Entries are evicted if necessary.
+     * @param budget The approximate maximum number of bytes the cache
+     * may use.
+     */
+    public synchronized void setBudget(int budget) {
+        mBudget = budget;
+        trim();
+    }
+
+    /**
+     * Removes all entries from the cache.  This should be called whenever
+     * something that affects the encoded files changes, e.g. the
+     * instrument list or the instruments' fade values.
+     */
+    public synchronized void invalidate() {
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Returns the number of lookups that found an encoded chord.
+     * @return The number of cache hits.
+     */
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of lookups that had to encode a chord.
+     * @return The number of cache misses.
+     */
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * Returns the number of entries removed to stay within the budget.
+     * @return The number of evictions.
+     */
+    public synchronized int getEvictions() {
+        return mEvictions;
+    }
+
+    /**
+     * Returns the approximate memory currently used by the cache.
+     * @return The number of bytes used.
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EncodedChordCache[entries=" + mEntries.size() + ", bytes=" + mSize
+            + ", hits=" + mHits + ", misses=" + mMisses
+            + ", evictions=" + mEvictions + "]";
+    }
+
+    /**
+     * Evicts least recently used entries until the cache is within budget.
+     * Must be called with the lock held.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Chord, byte[]>> it = mEntries.entrySet().iterator();
+        while (mSize > mBudget && it.hasNext()) {
+            Map.Entry<Chord, byte[]> e = it.next();
+            mSize -= entrySize(e.getValue());
+            it.remove();
+            mEvictions++;
+        }
+    }
+
+    private static int entrySize(byte[] data) {
+        return data.length + sENTRY_OVERHEAD;
+    }
+
+}
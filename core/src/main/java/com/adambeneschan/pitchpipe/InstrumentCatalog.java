@@ -0,0 +1,113 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A precompiled, binary form of an {@link InstrumentTable}, so that the
+ * app doesn't have to parse the instrument resource strings each time it
+ * starts.  The catalog is generated at build time from the same strings
+ * (see {@link InstrumentCatalogGenerator}) and records a hash of them.
+ * When it is loaded, the hash is checked against the strings the app
+ * actually has; if they differ (because the resources were changed after
+ * the catalog was built, or the names have been translated for the
+ * current locale), the catalog is not used and the strings should be
+ * parsed instead.
+ * @author Adam Beneschan
+ */
+public class InstrumentCatalog {
+
+    /** The name of the catalog among the app's assets. */
+    public static final String ASSET_NAME = "instrument_catalog.bin";
+
+    private static final int sMAGIC = 0x50504943;   // "PPIC"
+    private static final int sVERSION = 1;
+
+    private InstrumentCatalog() { }
+
+    /**
+     * Returns the hash of the resource strings that a catalog records.
+     * @param names The {@code instrument_names} strings.
+     * @param list The {@code instrument_list} strings.
+     * @return The hash.
+     */
+    public static int sourceHash(String[] names, String[] list) {
+        int h = sVERSION;
+        for (String s : names)
+            h = 31 * h + (s == null ? 0 : s.hashCode());
+        h = 31 * h + names.length;
+        for (String s : list)
+            h = 31 * h + (s == null ? 0 : s.hashCode());
+        h = 31 * h + list.length;
+        return h;
+    }
+
+    /**
+     * Writes a catalog.
+     * @param table The instruments.
+     * @param sourceHash The {@link #sourceHash} of the strings the table
+     * was parsed from.
+     * @param out Where to write the catalog.  The stream is not closed.
+     * @throws IOException if writing to {@code out} results in an
+     * exception.
+     */
+    public static void write(InstrumentTable table, int sourceHash, OutputStream out) throws IOException {
+        List<MidiInstrument> list = table.list();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(sMAGIC);
+        data.writeShort(sVERSION);
+        data.writeInt(sourceHash);
+        data.writeShort(list.size());
+        for (MidiInstrument instr : list) {
+            data.writeShort(instr.getCode());
+            data.writeInt(instr.getFade());
+            data.writeUTF(instr.getName());
+        }
+        data.flush();
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Reads a catalog, all at once.
+     * @param in The stream to read the catalog from.  The stream is not
+     * closed.
+     * @param sourceHash The {@link #sourceHash} of the strings the app
+     * has.
+     * @return The instrument table, or {@code null} if the catalog was
+     * made from different strings or by a different version of this class.
+     * @throws IOException if the catalog can't be read or is damaged.
+     */
+    public static InstrumentTable read(InputStream in, int sourceHash) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(readAll(in)));
+        if (data.readInt() != sMAGIC)
+            throw new IOException("Not an instrument catalog");
+        if (data.readUnsignedShort() != sVERSION || data.readInt() != sourceHash)
+            return null;
+        int count = data.readUnsignedShort();
+        List<MidiInstrument> list = new ArrayList<MidiInstrument>(count);
+        for (int i = 0; i < count; i++) {
+            int code = data.readUnsignedShort();
+            int fade = data.readInt();
+            list.add(new MidiInstrument(code, data.readUTF(), fade));
+        }
+        return new InstrumentTable(list);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(in.available(), 1024));
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0)
+            bytes.write(buf, 0, n);
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Generates an {@link InstrumentCatalog} from the app's resource files.
+ * Run at build time with two arguments: the {@code res} directory, and
+ * the catalog file to write.
+ * @author Adam Beneschan
+ */
+public class InstrumentCatalogGenerator {
+
+    private InstrumentCatalogGenerator() { }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("usage: InstrumentCatalogGenerator <res directory> <catalog file>");
+            System.exit(2);
+        }
+        File res = new File(args[0]);
+        String[] names = readArray(new File(res, "values/instruments.xml"), "instrument_names");
+        String[] list = readArray(new File(res, "values/other.xml"), "instrument_list");
+        InstrumentTable table = InstrumentTable.parse(names, list);
+
+        File out = new File(args[1]);
+        File dir = out.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Can't create " + dir);
+        FileOutputStream fos = new FileOutputStream(out);
+        try {
+            InstrumentCatalog.write(table, InstrumentCatalog.sourceHash(names, list), fos);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Reads the items of a string array from an Android resource file,
+     * as the app would see them.
+     * @param f The resource file, e.g. {@code res/values/other.xml}.
+     * @param name The name of the array.
+     * @return The items.
+     * @throws Exception if the file can't be read or parsed, or has no
+     * such array.
+     */
+    public static String[] readArray(File f, String name) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(f);
+        NodeList arrays = doc.getElementsByTagName("array");
+        for (int i = 0; i < arrays.getLength(); i++) {
+            Element array = (Element) arrays.item(i);
+            if (name.equals(array.getAttribute("name"))) {
+                NodeList items = array.getElementsByTagName("item");
+                String[] strings = new String[items.getLength()];
+                for (int j = 0; j < strings.length; j++)
+                    strings[j] = items.item(j).getTextContent();
+                return strings;
+            }
+        }
+        throw new IllegalArgumentException("No array " + name + " in " + f);
+    }
+
+}
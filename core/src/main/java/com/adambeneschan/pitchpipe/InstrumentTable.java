@@ -0,0 +1,118 @@
+package com.adambeneschan.pitchpipe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The instruments that can be used for chords, built from the strings in
+ * the {@code instrument_names} and {@code instrument_list} resource
+ * arrays.  This class does not depend on Android; {@code InstrumentList}
+ * reads the resources and hands the strings to {@link #parse}, or loads
+ * the table from an {@link InstrumentCatalog}.  Instruments are looked up
+ * by code in a table with an entry for every MIDI program.
+ * @author Adam Beneschan
+ */
+public class InstrumentTable {
+
+    /** The number of MIDI programs; codes run from 1 to this. */
+    public static final int PROGRAMS = 128;
+
+    private final List<MidiInstrument> mList;
+    private final MidiInstrument[] mByCode = new MidiInstrument[PROGRAMS];
+
+    // Pattern used for both instrument_list and instrument_names strings
+    // in resource files.  The pattern is a numeric MIDI program code, 
+    // followed by ";", followed by data.
+    private static final Pattern sInstrPattern = Pattern.compile("^([0-9]+);(.*)$");
+
+    /**
+     * Constructs an InstrumentTable from a list of instruments.
+     * @param list The instruments, in the order they appear in the menu.
+     */
+    public InstrumentTable(List<MidiInstrument> list) {
+        mList = list;
+        for (MidiInstrument instr : list) {
+            int i = instr.getCode() - 1;
+            if (i >= 0 && i < PROGRAMS && mByCode[i] == null)
+                mByCode[i] = instr;
+        }
+    }
+
+    /**
+     * Builds an InstrumentTable from the resource strings.
+     * @param names The {@code instrument_names} strings, each in the form
+     * {@code <prog>;<name>}; null entries are ignored.
+     * @param list The {@code instrument_list} strings, each in the form
+     * {@code <prog>;<fade>}, where {@code <fade>} is a time in ms or
+     * "none"; null entries are ignored.  Only these instruments are in the
+     * table.
+     * @return The table.
+     */
+    public static InstrumentTable parse(String[] names, String[] list) {
+        // Instrument names are kept in a map, by program code.  Codes that
+        // appear here but not in the list will not be used.
+        Map<Integer,String> nameMap = new HashMap<Integer,String>();
+        for (String s : names) {
+            if (s != null) {
+                Matcher m = sInstrPattern.matcher(s);
+                if (m.find()) {
+                    int code = Integer.valueOf(m.group(1));
+                    nameMap.put(code, m.group(2));
+                }
+            }
+        }
+    
+        // The list of instruments, along with other data (currently, the
+        // approximate fade-out time), using the name from the map created
+        // above.
+        List<MidiInstrument> instrList = new ArrayList<MidiInstrument>();
+        for (String s : list) {
+            if (s != null) {
+                Matcher m = sInstrPattern.matcher(s);
+                if (m.find()) {
+                    int code = Integer.valueOf(m.group(1));
+                    String fadeString = m.group(2);
+                    int fade;
+                    if ("none".equals(fadeString)) {
+                        fade = Integer.MAX_VALUE;
+                    } else {
+                        fade = Integer.valueOf(fadeString);
+                    }
+                    String name = nameMap.get(code);
+                    if (name == null) {
+                        // If no name, just use a dummy name.  The
+                        // alternative would be not to add it to the list.
+                        name = "Program " + code;
+                    }
+                    instrList.add(new MidiInstrument(code, name, fade));
+                }
+            }
+        }
+        return new InstrumentTable(instrList);
+    }
+
+    /** 
+     * Returns a list of all instruments that can be used for chords.
+     * @return A list of all available instruments.
+     */
+    public List<MidiInstrument> list() {
+        return mList;
+    }
+
+    /** 
+     * Returns the MidiInstrument in the table with a specified code.
+     * @param code The MIDI instrument (program) code (see http://www.midi.org/techspecs/gm1sound.php).
+     * @return The MidiInstrument whose code is {@code code}, or 
+     * null if there is no such instrument in the table.
+     */
+    public MidiInstrument instrumentForCode(int code) {
+        if (code < 1 || code > PROGRAMS)
+            return null;
+        return mByCode[code - 1];
+    }
+
+}
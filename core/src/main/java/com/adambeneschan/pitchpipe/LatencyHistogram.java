@@ -0,0 +1,133 @@
+package com.adambeneschan.pitchpipe;
+
+/**
+ * A histogram of latencies with a fixed set of logarithmic buckets, so
+ * that it takes the same memory however many values are recorded.  There
+ * are 8 buckets for each doubling of the latency, from 1 microsecond up
+ * to about 2 minutes, which makes any percentile accurate to 12.5%;
+ * the exact maximum is kept as well.  This class does not depend on
+ * Android.
+ * @author Adam Beneschan
+ */
+public class LatencyHistogram {
+
+    // Buckets per doubling, as a power of 2
+    private static final int sSUB_BITS = 3;
+    private static final int sSUB_BUCKETS = 1 << sSUB_BITS;
+    private static final int sOCTAVES = 25;   // up to 2^27 us, about 134 s
+    private static final int sBUCKETS = sOCTAVES * sSUB_BUCKETS;
+
+    private final long[] mCounts = new long[sBUCKETS];
+    private long mCount = 0;
+    private long mSum = 0;
+    private long mMax = 0;
+
+    /**
+     * Records one latency.
+     * @param nanos The latency, in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        mCounts[bucket(micros)]++;
+        mCount++;
+        mSum += micros;
+        if (micros > mMax)
+            mMax = micros;
+    }
+
+    /**
+     * Forgets all recorded latencies.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < sBUCKETS; i++)
+            mCounts[i] = 0;
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     * @return The count.
+     */
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the largest latency recorded.
+     * @return The maximum, in microseconds.
+     */
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Returns the mean of the latencies recorded.
+     * @return The mean, in microseconds, or 0 if nothing was recorded.
+     */
+    public synchronized long getMean() {
+        return (mCount == 0) ? 0 : mSum / mCount;
+    }
+
+    /**
+     * Returns a percentile of the latencies recorded.
+     * @param percent The percentile, e.g. 99.0 for the 99th percentile.
+     * @return The upper bound of the bucket holding the percentile, in
+     * microseconds (never more than the maximum), or 0 if nothing was
+     * recorded.
+     */
+    public synchronized long getPercentile(double percent) {
+        if (mCount == 0)
+            return 0;
+        long rank = (long) Math.ceil(percent / 100.0 * mCount);
+        rank = Math.max(1, Math.min(mCount, rank));
+        long seen = 0;
+        for (int i = 0; i < sBUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), mMax);
+        }
+        return mMax;
+    }
+
+    /**
+     * Returns a one-line summary, with times in milliseconds.
+     */
+    @Override
+    public synchronized String toString() {
+        return "n=" + mCount
+            + " p50=" + millis(getPercentile(50)) + " p95=" + millis(getPercentile(95))
+            + " p99=" + millis(getPercentile(99)) + " max=" + millis(mMax)
+            + " mean=" + millis(getMean());
+    }
+
+    private static String millis(long micros) {
+        return (micros / 1000) + "." + (micros % 1000 / 100) + (micros % 100 / 10);
+    }
+
+    /**
+     * Returns the bucket for a latency.  Values below 8 us each have their
+     * own bucket; above that, each doubling is split into 8 buckets.
+     */
+    private static int bucket(long micros) {
+        if (micros < sSUB_BUCKETS)
+            return (int) micros;
+        int octave = 63 - Long.numberOfLeadingZeros(micros) - sSUB_BITS + 1;
+        int sub = (int) (micros >>> (octave - 1)) & (sSUB_BUCKETS - 1);
+        int b = octave * sSUB_BUCKETS + sub;
+        return Math.min(b, sBUCKETS - 1);
+    }
+
+    /**
+     * Returns the largest latency that falls in a bucket.
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < sSUB_BUCKETS)
+            return bucket;
+        int octave = bucket / sSUB_BUCKETS;
+        int sub = bucket % sSUB_BUCKETS;
+        return ((long) (sSUB_BUCKETS + sub + 1) << (octave - 1)) - 1;
+    }
+
+}
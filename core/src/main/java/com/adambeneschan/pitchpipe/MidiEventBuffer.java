@@ -0,0 +1,202 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * A growable buffer of bytes into which MIDI events are encoded directly.
+ * A buffer can be reused for any number of MIDI files by calling
+ * {@link #reset}; once it has grown to the size of the largest file,
+ * encoding into it does no further allocation.  A small pool of buffers
+ * is kept so that callers can borrow one with {@link #obtain} and give it
+ * back with {@link #recycle}.
+ * @author Adam Beneschan
+ */
+public class MidiEventBuffer {
+
+    private static final int sDEFAULT_CAPACITY = 256;
+    private static final int sMAX_POOLED = 4;
+
+    private static final ArrayList<MidiEventBuffer> sPool = new ArrayList<MidiEventBuffer>();
+
+    private byte[] mData;
+    private int mLength = 0;
+
+    /**
+     * Constructs an empty MidiEventBuffer with a default capacity.
+     */
+    public MidiEventBuffer() {
+        this(sDEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty MidiEventBuffer.
+     * @param capacity The initial capacity, in bytes.
+     */
+    public MidiEventBuffer(int capacity) {
+        mData = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Returns a buffer from the pool, or a new one if the pool is empty.
+     * The buffer is empty.
+     * @return An empty buffer.
+     */
+    public static MidiEventBuffer obtain() {
+        synchronized (sPool) {
+            int n = sPool.size();
+            if (n > 0)
+                return sPool.remove(n - 1);
+        }
+        return new MidiEventBuffer();
+    }
+
+    /**
+     * Returns a buffer to the pool.  The caller must not use the buffer
+     * afterwards.
+     * @param buf The buffer to return.
+     */
+    public static void recycle(MidiEventBuffer buf) {
+        buf.reset();
+        synchronized (sPool) {
+            if (sPool.size() < sMAX_POOLED)
+                sPool.add(buf);
+        }
+    }
+
+    /**
+     * Empties the buffer, keeping its storage.
+     */
+    public void reset() {
+        mLength = 0;
+    }
+
+    /**
+     * Returns the number of bytes in the buffer.
+     * @return The number of bytes written since the last reset.
+     */
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * Returns the array that backs the buffer.  Only the first
+     * {@link #length()} bytes are valid, and the array may be replaced by
+     * a later write.
+     * @return The backing array.
+     */
+    public byte[] array() {
+        return mData;
+    }
+
+    /**
+     * Appends one byte.
+     * @param b The byte, as an unsigned value 0-255.
+     */
+    public void put(int b) {
+        ensureCapacity(1);
+        mData[mLength++] = (byte) b;
+    }
+
+    /**
+     * Appends a three-byte event, the size of most channel messages.
+     */
+    public void put(int b0, int b1, int b2) {
+        ensureCapacity(3);
+        mData[mLength++] = (byte) b0;
+        mData[mLength++] = (byte) b1;
+        mData[mLength++] = (byte) b2;
+    }
+
+    /**
+     * Appends an array of bytes.
+     * @param bytes The bytes to append.
+     */
+    public void put(byte[] bytes) {
+        put(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Appends part of an array of bytes.
+     * @param bytes The array.
+     * @param offset The index of the first byte to append.
+     * @param count The number of bytes to append.
+     */
+    public void put(byte[] bytes, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(bytes, offset, mData, mLength, count);
+        mLength += count;
+    }
+
+    /**
+     * Appends a variable-length quantity, as used for delta times in
+     * standard MIDI files: seven bits per byte, most significant group
+     * first, with the high bit set on all bytes but the last.
+     * @param value The value, from 0 to 0x0FFFFFFF inclusive.
+     * @throws IllegalArgumentException if {@code value} is out of range.
+     */
+    public void putVarLen(int value) {
+        if (value < 0 || value > 0x0FFFFFFF)
+            throw new IllegalArgumentException("Variable-length value out of range: " + value);
+        ensureCapacity(4);
+        if (value >= 1 << 21)
+            mData[mLength++] = (byte) (0x80 | (value >>> 21));
+        if (value >= 1 << 14)
+            mData[mLength++] = (byte) (0x80 | ((value >>> 14) & 0x7F));
+        if (value >= 1 << 7)
+            mData[mLength++] = (byte) (0x80 | ((value >>> 7) & 0x7F));
+        mData[mLength++] = (byte) (value & 0x7F);
+    }
+
+    /**
+     * Appends a 32-bit big-endian integer.
+     * @param value The integer.
+     */
+    public void putInt(int value) {
+        ensureCapacity(4);
+        setInt(mLength, value);
+        mLength += 4;
+    }
+
+    /**
+     * Overwrites four bytes already in the buffer with a 32-bit big-endian
+     * integer; used to fill in length fields.
+     * @param pos The offset of the first byte.
+     * @param value The integer.
+     */
+    public void setInt(int pos, int value) {
+        mData[pos] = (byte) (value >>> 24);
+        mData[pos + 1] = (byte) (value >>> 16);
+        mData[pos + 2] = (byte) (value >>> 8);
+        mData[pos + 3] = (byte) value;
+    }
+
+    /**
+     * Writes the contents of the buffer to a stream in one call.
+     * @param out The stream.
+     * @throws IOException if writing to {@code out} results in an exception.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(mData, 0, mLength);
+    }
+
+    /**
+     * Returns a copy of the contents of the buffer.
+     * @return A new array holding the bytes written since the last reset.
+     */
+    public byte[] toByteArray() {
+        byte[] result = new byte[mLength];
+        System.arraycopy(mData, 0, result, 0, mLength);
+        return result;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (mLength + extra > mData.length) {
+            byte[] newData = new byte[Math.max(mData.length * 2, mLength + extra)];
+            System.arraycopy(mData, 0, newData, 0, mLength);
+            mData = newData;
+        }
+    }
+
+}
@@ -0,0 +1,456 @@
+/**
+ * 
+ */
+package com.adambeneschan.pitchpipe;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Contains a method to create a simple MIDI file to play a chord.
+ * Adapted from code by Kevin Boone
+ * http://kevinboone.net/javamidi.html
+ * (c)2011 Kevin Boone, all rights reserved
+ * @author Adam Beneschan, Kevin Boone
+ *
+ */
+public class MidiFileCreator {
+
+    /**
+     * The default resolution, in ticks per quarter note.
+     */
+    public static final int DEFAULT_PPQ = 960;
+
+    /**
+     * The default tempo, in microseconds per quarter note.  Together with
+     * {@link #DEFAULT_PPQ}, this makes one tick exactly one millisecond.
+     */
+    public static final int DEFAULT_TEMPO = 960000;
+
+    /**
+     * The maximum number of parts in a multi-part file: one per MIDI
+     * channel, except the percussion channel.
+     */
+    public static final int MAX_PARTS = 15;
+
+    private MidiFileCreator() { }
+
+    /**
+     * Creates a simple MIDI file to play a chord.
+     * @param f Represents the path of the MIDI file to create.
+     * @param c The chord to play.
+     * @throws IOException if a file I/O operation results in an exception.
+     */
+    public static void create(File f, Chord c) throws IOException {
+        FileOutputStream fos = new FileOutputStream(f);
+        try {
+            create(fos, c);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Returns the contents of a simple MIDI file to play a chord, without
+     * writing anything to disk.
+     * @param c The chord to play.
+     * @return The bytes of the MIDI file.
+     */
+    public static byte[] encode(Chord c) {
+        MidiEventBuffer buf = MidiEventBuffer.obtain();
+        try {
+            encode(c, buf);
+            return buf.toByteArray();
+        } finally {
+            MidiEventBuffer.recycle(buf);
+        }
+    }
+
+    /**
+     * Writes a simple MIDI file to play a chord to a stream, using the
+     * default resolution and tempo.  The stream is not closed.
+     * @param out The stream to which the MIDI file is written.
+     * @param c The chord to play.
+     * @throws IOException if writing to {@code out} results in an exception.
+     */
+    public static void create(OutputStream out, Chord c) throws IOException {
+        create(out, c, DEFAULT_PPQ, DEFAULT_TEMPO);
+    }
+
+    /**
+     * Writes a simple MIDI file to play a chord to a stream.  The stream
+     * is not closed.
+     * @param out The stream to which the MIDI file is written.
+     * @param c The chord to play.
+     * @param ppq The resolution, in ticks per quarter note (1 to 32767).
+     * @param tempo The tempo, in microseconds per quarter note (1 to
+     * 16777215).
+     * @throws IOException if writing to {@code out} results in an exception.
+     */
+    public static void create(OutputStream out, Chord c, int ppq, int tempo) throws IOException {
+        MidiEventBuffer buf = MidiEventBuffer.obtain();
+        try {
+            encode(c, buf, ppq, tempo);
+            buf.writeTo(out);   // one bulk write
+        } finally {
+            MidiEventBuffer.recycle(buf);
+        }
+    }
+
+    /**
+     * Encodes a simple MIDI file to play a chord into a caller-supplied
+     * buffer, using the default resolution and tempo.  The buffer is reset
+     * first.  Callers that keep their own buffer can encode any number of
+     * chords without allocating.
+     * @param c The chord to play.
+     * @param buf The buffer that receives the complete MIDI file.
+     */
+    public static void encode(Chord c, MidiEventBuffer buf) {
+        encode(c, buf, DEFAULT_PPQ, DEFAULT_TEMPO);
+    }
+
+    /**
+     * Encodes a simple MIDI file to play a chord into a caller-supplied
+     * buffer.  The buffer is reset first.
+     * @param c The chord to play.
+     * @param buf The buffer that receives the complete MIDI file.
+     * @param ppq The resolution, in ticks per quarter note (1 to 32767).
+     * @param tempo The tempo, in microseconds per quarter note (1 to
+     * 16777215).
+     * @throws IllegalArgumentException if {@code ppq} or {@code tempo} is
+     * out of range.
+     */
+    public static void encode(Chord c, MidiEventBuffer buf, int ppq, int tempo) {
+        checkTiming(ppq, tempo);
+        // Written straight into the buffer; no MidiFile is needed
+        MidiFile.start(buf, ppq, tempo);
+        writeChord(buf, c, 0, -1, ppq, tempo);
+        MidiFile.finish(buf);
+    }
+
+    /**
+     * Returns the contents of a multi-track (Format 1) MIDI file that plays
+     * several parts at once, e.g. soprano, alto, tenor and bass, each with
+     * its own instrument.  Uses the default resolution and tempo.
+     * @param parts The chords to play, one per part.  Each part gets its
+     * own track and channel.  At most {@link #MAX_PARTS} parts are allowed.
+     * @return The bytes of the MIDI file.
+     */
+    public static byte[] encodeParts(Chord[] parts) {
+        MidiEventBuffer buf = MidiEventBuffer.obtain();
+        try {
+            encodeParts(parts, buf, DEFAULT_PPQ, DEFAULT_TEMPO, false);
+            return buf.toByteArray();
+        } finally {
+            MidiEventBuffer.recycle(buf);
+        }
+    }
+
+    /**
+     * Encodes a MIDI file that plays several parts at once.  Each part is
+     * a chord played on its own channel, with a program change to the
+     * chord's instrument.  The buffer is reset first.
+     * @param parts The chords to play, one per part.  At most
+     * {@link #MAX_PARTS} parts are allowed.
+     * @param buf The buffer that receives the complete MIDI file.
+     * @param ppq The resolution, in ticks per quarter note (1 to 32767).
+     * @param tempo The tempo, in microseconds per quarter note (1 to
+     * 16777215).
+     * @param merged If {@code false}, a Format 1 file is written, with a
+     * tempo track followed by one track per part.  If {@code true}, the
+     * parts' events are merged in time order into a single-track Format 0
+     * file, for players that cannot handle Format 1.
+     * @throws IllegalArgumentException if there are too many parts, or
+     * {@code ppq} or {@code tempo} is out of range.
+     */
+    public static void encodeParts(Chord[] parts, MidiEventBuffer buf, int ppq, int tempo, boolean merged) {
+        checkTiming(ppq, tempo);
+        if (parts.length > MAX_PARTS)
+            throw new IllegalArgumentException("Too many parts: " + parts.length);
+        MidiTrack[] tracks = new MidiTrack[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            tracks[i] = MidiTrack.forChord(parts[i], partChannel(i), ppq, tempo);
+
+        byte[] meta = MidiFile.metaEvents(tempo);
+        buf.reset();
+        if (merged) {
+            MidiFile.writeFileHeader(buf, 0, 1, ppq);
+            MidiTrack.merge(tracks).writeChunk(buf, meta);
+        } else {
+            MidiFile.writeFileHeader(buf, 1, parts.length + 1, ppq);
+            new MidiTrack().writeChunk(buf, meta);   // tempo track
+            for (MidiTrack t : tracks)
+                t.writeChunk(buf);
+        }
+    }
+
+    /**
+     * Returns the MIDI channel used for a part.  Channel 10 (9 counting
+     * from 0) is reserved for percussion, so it is skipped.
+     * @param part The part number, starting at 0.
+     * @return The channel, 0-15.
+     */
+    static int partChannel(int part) {
+        return part < 9 ? part : part + 1;
+    }
+
+    /**
+     * Creates a MIDI file that plays a sequence of chords, one after the
+     * other, using the default resolution and tempo.  The file is written
+     * as the chords are encoded, so the memory used does not depend on
+     * the length of the sequence.
+     * @param f Represents the path of the MIDI file to create.
+     * @param chords The chords to play, in order.  Each chord starts when
+     * the previous one stops.
+     * @param gap The time in milliseconds to wait between chords.
+     * @throws IOException if a file I/O operation results in an exception.
+     */
+    public static void createSequence(File f, Iterable<Chord> chords, int gap) throws IOException {
+        MidiStreamWriter w = new MidiStreamWriter(f);
+        try {
+            boolean first = true;
+            for (Chord c : chords) {
+                if (!first)
+                    w.rest(gap);
+                w.play(c);
+                first = false;
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Adds the events to play a chord to a MIDI file.
+     * @param buf The buffer that holds the file.
+     * @param c The chord to play.
+     * @param delta The delta time, in ticks, before the first event.
+     * @param currentProg The program (instrument code - 1) that is
+     * already in effect, or -1 if a program change is always needed.
+     * @param ppq The number of ticks per quarter note.
+     * @param tempo The number of microseconds per quarter note.
+     */
+    static void writeChord(MidiEventBuffer buf, Chord c, int delta, int currentProg, int ppq, int tempo) {
+        int n = c.getNoteCount();
+        int delayDelta = delta;
+        int maxTimeDelta = ticks(c.getDuration(), ppq, tempo);
+        
+        if (c.getInstrument() - 1 != currentProg) {
+            MidiFile.progChange(buf, delayDelta, c.getInstrument() - 1);
+            delayDelta = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            MidiFile.noteOn(buf, delayDelta, c.getNote(i), 127);
+            delayDelta = ticks(c.getDelay(), ppq, tempo);
+            //maxTimeDelta -= delayDelta;
+            //  definition has been changed: the maximum time now starts
+            //  when the last note is started if chord is rolled
+        }
+        for (int i = 0; i < n; i++) {
+            MidiFile.noteOff(buf, maxTimeDelta, c.getNote(i));
+            maxTimeDelta = 0;
+        }
+    }
+
+    /**
+     * Checks that a resolution and tempo can be written to a MIDI file.
+     * @throws IllegalArgumentException if {@code ppq} or {@code tempo} is
+     * out of range.
+     */
+    static void checkTiming(int ppq, int tempo) {
+        if (ppq < 1 || ppq > 0x7FFF)
+            throw new IllegalArgumentException("Ticks per quarter note out of range: " + ppq);
+        if (tempo < 1 || tempo > 0xFFFFFF)
+            throw new IllegalArgumentException("Tempo out of range: " + tempo);
+    }
+
+    /** Encoders for the parts of a Standard MIDI File.  Everything is
+        written straight into a MidiEventBuffer. */
+    static class MidiFile
+    {
+      // Standard MIDI file header, for one-track file
+      // 4D, 54... are just magic numbers to identify the
+      //  headers
+      // Note that because we're only writing one track, we
+      //  can for simplicity combine the file and track headers.
+      //  The resolution is written between the two.
+      static final byte fileHeader[] = bytes (new int[]
+         {
+         0x4d, 0x54, 0x68, 0x64, 0x00, 0x00, 0x00, 0x06,
+         0x00, 0x00, // single-track format
+         0x00, 0x01  // one track
+         });
+
+      static final byte trackHeader[] = bytes (new int[]
+         {
+         0x4d, 0x54, 0x72, 0x6B
+         });
+
+      // The track length follows the track header (the 2 is the
+      //  resolution)
+      static final int trackLengthOffset = fileHeader.length + 2 + trackHeader.length;
+
+      // Standard footer
+      static final byte footer[] = bytes (new int[]
+         {
+         0x01, 0xFF, 0x2F, 0x00
+         });
+
+      // A MIDI event to set the tempo; followed by 3 bytes giving
+      //  the number of microseconds per crotchet
+      static final byte tempoEvent[] = bytes (new int[]
+         {
+         0x00, 0xFF, 0x51, 0x03
+         });
+
+      // A MIDI event to set the key signature. This is irrelent to
+      //  playback, but necessary for editing applications 
+      static final byte keySigEvent[] = bytes (new int[]
+         {
+         0x00, 0xFF, 0x59, 0x02,
+         0x00, // C
+         0x00  // major
+         });
+
+
+      // A MIDI event to set the time signature. This is irrelent to
+      //  playback, but necessary for editing applications 
+      static final byte timeSigEvent[] = bytes (new int[]
+         {
+         0x00, 0xFF, 0x58, 0x04,
+         0x04, // numerator
+         0x02, // denominator (2==4, because it's a power of 2)
+         0x30, // ticks per click (not used)
+         0x08  // 32nd notes per crotchet 
+         });
+
+      private MidiFile ()
+      {
+      }
+
+
+      /** Reset a buffer and write the header and the standard
+          metadata - tempo, etc - into it, with the track length
+          left at 0 */
+      static void start (MidiEventBuffer buf, int ppq, int tempo)
+      {
+        buf.reset ();
+        buf.put (fileHeader);
+        buf.put (ppq >> 8);
+        buf.put (ppq & 0xFF);
+        buf.put (trackHeader);
+        buf.putInt (0);   // track length, filled in by finish()
+
+        buf.put (tempoEvent);
+        buf.put (tempo >> 16);
+        buf.put ((tempo >> 8) & 0xFF);
+        buf.put (tempo & 0xFF);
+        buf.put (keySigEvent);
+        buf.put (timeSigEvent);
+      }
+
+
+      /** Write the footer into a buffer started by start() and fill
+          in the track length.  The buffer then holds the complete
+          file. */
+      static void finish (MidiEventBuffer buf)
+      {
+        writeFooter (buf);
+
+        // The track data size is everything after the length field,
+        //  including the footer, as a 32-bit big-endian number
+        buf.setInt (trackLengthOffset, buf.length () - trackLengthOffset - 4);
+      }
+
+
+      /** Write a file header chunk ("MThd") */
+      static void writeFileHeader (MidiEventBuffer buf, int format, int tracks, int ppq)
+      {
+        buf.put (fileHeader, 0, 8);
+        buf.put (format >> 8);
+        buf.put (format & 0xFF);
+        buf.put (tracks >> 8);
+        buf.put (tracks & 0xFF);
+        buf.put (ppq >> 8);
+        buf.put (ppq & 0xFF);
+      }
+
+
+      /** Return the standard metadata - tempo, etc - as encoded
+          events */
+      static byte[] metaEvents (int tempo)
+      {
+        MidiEventBuffer meta = new MidiEventBuffer (32);
+        meta.put (tempoEvent);
+        meta.put (tempo >> 16);
+        meta.put ((tempo >> 8) & 0xFF);
+        meta.put (tempo & 0xFF);
+        meta.put (keySigEvent);
+        meta.put (timeSigEvent);
+        return meta.toByteArray ();
+      }
+
+
+      /** Write the footer only.  The caller is responsible for the
+          track length (used when the file is streamed) */
+      static void writeFooter (MidiEventBuffer buf)
+      {
+        buf.put (footer);
+      }
+
+
+      /** Convert an array of integers which are assumed to contain
+          unsigned bytes into an array of bytes */
+      private static byte[] bytes (int[] ints)
+      {
+        int l = ints.length;
+        byte[] out = new byte[ints.length];
+        for (int i = 0; i < l; i++)
+        {
+          out[i] = (byte) ints[i];
+        }
+        return out;
+      }
+
+
+      /** Store a note-on event */
+      static void noteOn (MidiEventBuffer buf, int delta, int note, int velocity)
+      {
+      buf.putVarLen (delta);
+      buf.put (0x90, note, velocity);
+      }
+
+
+      /** Store a note-off event */
+      static void noteOff (MidiEventBuffer buf, int delta, int note)
+      {
+      buf.putVarLen (delta);
+      buf.put (0x80, note, 0);
+      }
+
+
+      /** Store a program-change event */
+      static void progChange (MidiEventBuffer buf, int delta, int prog)
+      {
+      buf.putVarLen (delta);
+      buf.put (0xC0);
+      buf.put (prog);
+      }
+    }
+
+    /**
+     * Return the number of ticks corresponding to the time, for the MIDI file.
+     * @param time The time, in milliseconds.
+     * @param ppq The number of ticks per quarter note.
+     * @param tempo The number of microseconds per quarter note.
+     * @return The number of ticks, rounded to the nearest tick.
+     */
+    static int ticks(int time, int ppq, int tempo) {
+        // ticks = time in usec / usec per quarter * ticks per quarter
+        long t = ((long) time * 1000 * ppq + tempo / 2) / tempo;
+        return (int) Math.min(t, 0x0FFFFFFF);
+    }
+
+}
@@ -49,5 +49,19 @@ public class MidiInstrument {
         return mFade;
     }
 
-}
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof MidiInstrument))
+            return false;
+        MidiInstrument other = (MidiInstrument) o;
+        return mCode == other.mCode && mFade == other.mFade && mName.equals(other.mName);
+    }
 
+    @Override
+    public int hashCode() {
+        return (31 * mCode + mFade) * 31 + mName.hashCode();
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a single-track MIDI file as events are produced, for sequences
+ * too long to build in memory (warm-up scales, pitch cues for a whole
+ * song, drones).  Events are encoded into a small fixed-size buffer that
+ * is written to a {@code FileChannel} whenever it fills up; when the
+ * writer is closed, it goes back and fills in the 32-bit track length.
+ * The memory used does not depend on the length of the sequence.
+ * @author Adam Beneschan
+ */
+public class MidiStreamWriter {
+
+    // Write the buffer out once it holds this many bytes.  A single event
+    // fits in the slack left above this, but a whole chord written by
+    // play() may not; the buffer then grows to hold it.
+    private static final int sFLUSH_THRESHOLD = 8192;
+
+    private RandomAccessFile mFile;
+    private FileChannel mChannel;
+    private MidiEventBuffer mChunk;
+    private int mPpq;
+    private int mTempo;
+    private int mPendingDelta = 0;
+    private int mProgram = -1;
+
+    /**
+     * Constructs a MidiStreamWriter with the default resolution and tempo
+     * (see {@link MidiFileCreator#DEFAULT_PPQ}).
+     * @param f Represents the path of the MIDI file to create.
+     * @throws IOException if the file cannot be created.
+     */
+    public MidiStreamWriter(File f) throws IOException {
+        this(f, MidiFileCreator.DEFAULT_PPQ, MidiFileCreator.DEFAULT_TEMPO);
+    }
+
+    /**
+     * Constructs a MidiStreamWriter.
+     * @param f Represents the path of the MIDI file to create.
+     * @param ppq The resolution, in ticks per quarter note (1 to 32767).
+     * @param tempo The tempo, in microseconds per quarter note (1 to
+     * 16777215).
+     * @throws IOException if the file cannot be created.
+     */
+    public MidiStreamWriter(File f, int ppq, int tempo) throws IOException {
+        MidiFileCreator.checkTiming(ppq, tempo);
+        mPpq = ppq;
+        mTempo = tempo;
+        mFile = new RandomAccessFile(f, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+        mChunk = new MidiEventBuffer(sFLUSH_THRESHOLD + 64);
+        MidiFileCreator.MidiFile.start(mChunk, ppq, tempo);
+            // writes the header, with a zero track length for now
+    }
+
+    /**
+     * Adds silence before the next event.  The silence before an event
+     * can't be longer than the largest delta time a MIDI file can hold
+     * (0x0FFFFFFF ticks, about 74 hours at the default tempo); any more
+     * is ignored.
+     * @param time The time to wait, in milliseconds.
+     */
+    public void rest(int time) {
+        long delta = (long) mPendingDelta + MidiFileCreator.ticks(time, mPpq, mTempo);
+        mPendingDelta = (int) Math.min(delta, 0x0FFFFFFF);
+    }
+
+    /**
+     * Writes a program-change event.
+     * @param instrument The MIDI instrument code (1-128).
+     * @throws IOException if writing to the file results in an exception.
+     */
+    public void programChange(int instrument) throws IOException {
+        MidiFileCreator.MidiFile.progChange(mChunk, takeDelta(), instrument - 1);
+        mProgram = instrument - 1;
+        flushIfFull();
+    }
+
+    /**
+     * Writes a note-on event.
+     * @param note The note, as a MIDI note (60=middle C).
+     * @param velocity The velocity (0-127).
+     * @throws IOException if writing to the file results in an exception.
+     */
+    public void noteOn(int note, int velocity) throws IOException {
+        MidiFileCreator.MidiFile.noteOn(mChunk, takeDelta(), note, velocity);
+        flushIfFull();
+    }
+
+    /**
+     * Writes a note-off event.
+     * @param note The note, as a MIDI note (60=middle C).
+     * @throws IOException if writing to the file results in an exception.
+     */
+    public void noteOff(int note) throws IOException {
+        MidiFileCreator.MidiFile.noteOff(mChunk, takeDelta(), note);
+        flushIfFull();
+    }
+
+    /**
+     * Writes the events to play a chord, the same way
+     * {@link MidiFileCreator#create} would.  A program change is written
+     * only if the chord's instrument differs from the current one.
+     * @param c The chord to play.
+     * @throws IOException if writing to the file results in an exception.
+     */
+    public void play(Chord c) throws IOException {
+        MidiFileCreator.writeChord(mChunk, c, takeDelta(), mProgram, mPpq, mTempo);
+        mProgram = c.getInstrument() - 1;
+        flushIfFull();
+    }
+
+    /**
+     * Writes the end of the track, fills in the track length and closes
+     * the file.
+     * @throws IOException if writing to the file results in an exception.
+     */
+    public void close() throws IOException {
+        if (mChannel == null)
+            return;
+        try {
+            MidiFileCreator.MidiFile.writeFooter(mChunk);
+            flush();
+
+            // The track data size is everything after the length field
+            long trackLength = mChannel.position() - MidiFileCreator.MidiFile.trackLengthOffset - 4;
+            if (trackLength > 0xFFFFFFFFL)
+                throw new IOException("MIDI track too long: " + trackLength + " bytes");
+            ByteBuffer length = ByteBuffer.allocate(4);
+            length.putInt((int) trackLength);
+            length.flip();
+            while (length.hasRemaining())
+                mChannel.write(length, MidiFileCreator.MidiFile.trackLengthOffset + length.position());
+        } finally {
+            mChannel = null;
+            mFile.close();
+        }
+    }
+
+    private int takeDelta() {
+        int delta = mPendingDelta;
+        mPendingDelta = 0;
+        return delta;
+    }
+
+    private void flushIfFull() throws IOException {
+        if (mChunk.length() >= sFLUSH_THRESHOLD)
+            flush();
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(mChunk.array(), 0, mChunk.length());
+        while (bb.hasRemaining())
+            mChannel.write(bb);
+        mChunk.reset();
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.adambeneschan.pitchpipe;
+
+/**
+ * A track of channel events (note on/off, program change) with absolute
+ * times, used to build multi-track (Format 1) MIDI files.  Events are kept
+ * in primitive arrays, in the order they were added; times must not
+ * decrease.  Several tracks can be merged into one, interleaving their
+ * events in time order.
+ * @author Adam Beneschan
+ */
+public class MidiTrack {
+
+    private int[] mTimes;
+    private int[] mEvents;   // status | data1 << 8 | data2 << 16 | length << 24
+    private int mSize = 0;
+
+    // End of track meta event, following a delta time of 0
+    private static final byte[] sEndOfTrack = new byte[] {
+        (byte) 0xFF, 0x2F, 0x00
+    };
+
+    private static final byte[] sTrackHeader = new byte[] {
+        0x4d, 0x54, 0x72, 0x6B   // "MTrk"
+    };
+
+    /**
+     * Constructs an empty MidiTrack.
+     */
+    public MidiTrack() {
+        mTimes = new int[16];
+        mEvents = new int[16];
+    }
+
+    /**
+     * Creates a track that plays a chord on one channel, with a program
+     * change for the chord's instrument at the start.  The events are the
+     * same as those {@link MidiFileCreator#create} writes.
+     * @param c The chord to play.
+     * @param channel The MIDI channel (0-15).
+     * @param ppq The number of ticks per quarter note.
+     * @param tempo The number of microseconds per quarter note.
+     * @return The new track.
+     */
+    public static MidiTrack forChord(Chord c, int channel, int ppq, int tempo) {
+        MidiTrack t = new MidiTrack();
+        int n = c.getNoteCount();
+        int delay = MidiFileCreator.ticks(c.getDelay(), ppq, tempo);
+        int time = 0;
+        t.programChange(0, channel, c.getInstrument() - 1);
+        for (int i = 0; i < n; i++) {
+            if (i > 0)
+                time += delay;
+            t.noteOn(time, channel, c.getNote(i), 127);
+        }
+        // as for a single chord, the duration starts with the last note
+        time += MidiFileCreator.ticks(c.getDuration(), ppq, tempo);
+        for (int i = 0; i < n; i++)
+            t.noteOff(time, channel, c.getNote(i));
+        return t;
+    }
+
+    /**
+     * Merges tracks into one, interleaving their events in time order.
+     * Events with the same time keep the order of the tracks they came
+     * from (all events from the first track, then the second, ...).
+     * @param tracks The tracks to merge; they are not changed.
+     * @return A new track containing all the events.
+     */
+    public static MidiTrack merge(MidiTrack... tracks) {
+        MidiTrack result = new MidiTrack();
+        int[] next = new int[tracks.length];
+        while (true) {
+            // Pick the track whose next event is earliest; ties go to the
+            // lower-numbered track.
+            int best = -1;
+            for (int i = 0; i < tracks.length; i++) {
+                if (next[i] < tracks[i].mSize
+                    && (best < 0 || tracks[i].mTimes[next[i]] < tracks[best].mTimes[next[best]]))
+                    best = i;
+            }
+            if (best < 0)
+                return result;
+            result.add(tracks[best].mTimes[next[best]], tracks[best].mEvents[next[best]]);
+            next[best]++;
+        }
+    }
+
+    /**
+     * Adds a note-on event.
+     * @param time The absolute time, in ticks.
+     * @param channel The MIDI channel (0-15).
+     * @param note The note, as a MIDI note (60=middle C).
+     * @param velocity The velocity (0-127).
+     */
+    public void noteOn(int time, int channel, int note, int velocity) {
+        add(time, pack(0x90 | channel, note, velocity, 3));
+    }
+
+    /**
+     * Adds a note-off event.
+     * @param time The absolute time, in ticks.
+     * @param channel The MIDI channel (0-15).
+     * @param note The note, as a MIDI note (60=middle C).
+     */
+    public void noteOff(int time, int channel, int note) {
+        add(time, pack(0x80 | channel, note, 0, 3));
+    }
+
+    /**
+     * Adds a program-change event.
+     * @param time The absolute time, in ticks.
+     * @param channel The MIDI channel (0-15).
+     * @param prog The MIDI program (instrument code - 1).
+     */
+    public void programChange(int time, int channel, int prog) {
+        add(time, pack(0xC0 | channel, prog, 0, 2));
+    }
+
+    /**
+     * Returns the number of events in the track.
+     * @return The number of events.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the time of an event.
+     * @param i The index of the event.
+     * @return The absolute time of the event, in ticks.
+     */
+    public int timeAt(int i) {
+        return mTimes[i];
+    }
+
+    /**
+     * Returns the status byte (event type and channel) of an event.
+     * @param i The index of the event.
+     * @return The status byte.
+     */
+    public int statusAt(int i) {
+        return mEvents[i] & 0xFF;
+    }
+
+    /**
+     * Writes the track as an "MTrk" chunk, with delta times, followed by
+     * an end-of-track event.
+     * @param buf The buffer to append the chunk to.
+     */
+    public void writeChunk(MidiEventBuffer buf) {
+        writeChunk(buf, null);
+    }
+
+    /**
+     * Writes the track as an "MTrk" chunk, with delta times, followed by
+     * an end-of-track event.
+     * @param buf The buffer to append the chunk to.
+     * @param leading Encoded events (normally tempo and other meta events,
+     * each with a delta time of 0) to put at the start of the chunk, or
+     * {@code null}.
+     */
+    public void writeChunk(MidiEventBuffer buf, byte[] leading) {
+        buf.put(sTrackHeader);
+        int lengthOffset = buf.length();
+        buf.putInt(0);   // filled in below
+        if (leading != null)
+            buf.put(leading);
+        int time = 0;
+        for (int i = 0; i < mSize; i++) {
+            int e = mEvents[i];
+            buf.putVarLen(mTimes[i] - time);
+            time = mTimes[i];
+            buf.put(e & 0xFF);
+            buf.put((e >> 8) & 0xFF);
+            if ((e >>> 24) == 3)
+                buf.put((e >> 16) & 0xFF);
+        }
+        buf.put(0);
+        buf.put(sEndOfTrack);
+        buf.setInt(lengthOffset, buf.length() - lengthOffset - 4);
+    }
+
+    private static int pack(int status, int data1, int data2, int length) {
+        return status | (data1 << 8) | (data2 << 16) | (length << 24);
+    }
+
+    private void add(int time, int event) {
+        if (mSize > 0 && time < mTimes[mSize - 1])
+            throw new IllegalArgumentException("MIDI event times must not decrease");
+        if (mSize == mTimes.length) {
+            int[] newTimes = new int[mSize * 2];
+            int[] newEvents = new int[mSize * 2];
+            System.arraycopy(mTimes, 0, newTimes, 0, mSize);
+            System.arraycopy(mEvents, 0, newEvents, 0, mSize);
+            mTimes = newTimes;
+            mEvents = newEvents;
+        }
+        mTimes[mSize] = time;
+        mEvents[mSize] = event;
+        mSize++;
+    }
+
+}
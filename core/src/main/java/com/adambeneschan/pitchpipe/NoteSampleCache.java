@@ -0,0 +1,351 @@
+package com.adambeneschan.pitchpipe;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of pre-rendered notes for the PCM synthesizer, so that playing a
+ * chord only has to mix samples instead of synthesizing them.  Each entry
+ * is one note on one instrument, rendered by a {@link SynthVoice} and held
+ * for the configured hold time, followed by its release; the samples are
+ * kept in direct (off-heap) buffers.  The cache is bounded by a memory cap;
+ * when it is exceeded, the least recently used notes are evicted.  There
+ * should be only one instance of this class in an app.
+ * @author Adam Beneschan
+ */
+public class NoteSampleCache {
+
+    /** The default memory cap, in bytes. */
+    public static final long DEFAULT_CAP = 32L * 1024 * 1024;
+
+    /** The default time a note is held before it is released, in ms. */
+    public static final int DEFAULT_HOLD_TIME = 5000;
+
+    // Volume of a single note; the same as a single voice in ChordRenderer
+    static final float sNOTE_GAIN = 0.4F;
+
+    private static final int sRENDER_BLOCK = 1024;
+
+    private static NoteSampleCache sCache = null;
+
+    private static class Entry {
+        final ByteBuffer mSamples;
+        final int mFade;
+
+        Entry(ByteBuffer samples, int fade) {
+            mSamples = samples;
+            mFade = fade;
+        }
+    }
+
+    private final LinkedHashMap<Integer, Entry> mEntries =
+        new LinkedHashMap<Integer, Entry>(64, 0.75F, true);
+    private int mSampleRate = ChordRenderer.DEFAULT_SAMPLE_RATE;
+    private int mHoldTime = DEFAULT_HOLD_TIME;
+    private long mCap = DEFAULT_CAP;
+    private long mSize = 0;
+    private int mHits = 0;
+    private int mMisses = 0;
+    private int mEvictions = 0;
+
+    // Work for the warmer thread: the notes of a chord about to be
+    // played, then the rest of a warm-up range (mWarmNotes from
+    // mWarmNext on), both for the given instrument and fade
+    private Thread mWarmer = null;
+    private Chord mPendingChord = null;
+    private int mPendingFade;
+    private int[] mWarmNotes = new int[0];
+    private int mWarmNext = 0;
+    private int mWarmInstrument;
+    private int mWarmFade;
+
+    private NoteSampleCache() { }
+
+    /**
+     * Returns the single instance of this class.
+     * @return The single instance of this class.
+     */
+    public static synchronized NoteSampleCache getInstance() {
+        if (sCache == null) {
+            sCache = new NoteSampleCache();
+        }
+        return sCache;
+    }
+
+    /**
+     * Sets the sample rate and hold time of the rendered notes.  If either
+     * changes, the cache is emptied.
+     * @param sampleRate The sample rate, in Hz.
+     * @param holdTime The time, in milliseconds, each note is held before
+     * it is released.  Chords whose notes are held longer than this are
+     * synthesized rather than mixed from the cache.
+     */
+    public synchronized void configure(int sampleRate, int holdTime) {
+        if (sampleRate != mSampleRate || holdTime != mHoldTime) {
+            invalidate();
+            mSampleRate = sampleRate;
+            mHoldTime = holdTime;
+        }
+    }
+
+    /**
+     * Sets the memory cap.  Entries are evicted if necessary.
+     * @param cap The maximum number of bytes of samples to keep.
+     */
+    public synchronized void setCap(long cap) {
+        mCap = cap;
+        trim();
+    }
+
+    /**
+     * Returns the sample rate of the rendered notes.
+     * @return The sample rate, in Hz.
+     */
+    public synchronized int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * Returns the hold time of the rendered notes.
+     * @return The time, in milliseconds, each note is held before it is
+     * released.
+     */
+    public synchronized int getHoldTime() {
+        return mHoldTime;
+    }
+
+    /**
+     * Returns the samples for a note, rendering them if they are not
+     * already in the cache.
+     * @param instrument The MIDI instrument code.
+     * @param fade The instrument's approximate fade-out time (see
+     * {@link MidiInstrument#getFade()}).
+     * @param note The note, as a MIDI note (60=middle C).
+     * @return A read-only view of the samples (16-bit, mono), with its own
+     * position; the note is held for {@link #getHoldTime()} ms and then
+     * released.
+     */
+    public ShortBuffer get(int instrument, int fade, int note) {
+        Integer key = key(instrument, note);
+        int sampleRate;
+        int holdTime;
+        synchronized (this) {
+            Entry e = mEntries.get(key);
+            if (e != null && e.mFade == fade) {
+                mHits++;
+                return view(e.mSamples);
+            }
+            mMisses++;
+            sampleRate = mSampleRate;
+            holdTime = mHoldTime;
+        }
+
+        // Render outside the lock, so that a background warm-up doesn't
+        // hold up a chord that is about to play
+        ByteBuffer samples = render(instrument, fade, note, sampleRate, holdTime);
+        synchronized (this) {
+            if (sampleRate == mSampleRate && holdTime == mHoldTime) {
+                Entry old = mEntries.put(key, new Entry(samples, fade));
+                if (old != null)
+                    mSize -= old.mSamples.capacity();
+                mSize += samples.capacity();
+                trim();
+            }
+        }
+        return view(samples);
+    }
+
+    /**
+     * Renders every note in a range for an instrument, in a low-priority
+     * background thread.  Notes nearest the middle of the range are
+     * rendered first.  A warm-up that is already running is abandoned.
+     * @param instrument The MIDI instrument code.
+     * @param fade The instrument's approximate fade-out time.
+     * @param lowNote The lowest note to render.
+     * @param highNote The highest note to render.
+     */
+    public synchronized void warmInBackground(int instrument, int fade, int lowNote, int highNote) {
+        // middle, middle+1, middle-1, middle+2, ...
+        int[] notes = new int[Math.max(0, highNote - lowNote + 1)];
+        int middle = (lowNote + highNote) / 2;
+        int n = 0;
+        for (int d = 0; middle - d >= lowNote || middle + d + 1 <= highNote; d++) {
+            if (middle - d >= lowNote)
+                notes[n++] = middle - d;
+            if (middle + d + 1 <= highNote)
+                notes[n++] = middle + d + 1;
+        }
+        mWarmNotes = notes;
+        mWarmNext = 0;
+        mWarmInstrument = instrument;
+        mWarmFade = fade;
+        startWarmer();
+    }
+
+    /**
+     * Renders the notes of a chord that is likely to be played soon, in
+     * the same background thread, so that playing it only has to mix
+     * them.  The chord is rendered before the rest of any warm-up, which
+     * then carries on.  A chord that is waiting to be rendered is replaced
+     * by this one.
+     * @param chord The chord.
+     * @param fade The instrument's approximate fade-out time.
+     */
+    public synchronized void warmInBackground(Chord chord, int fade) {
+        mPendingChord = chord;
+        mPendingFade = fade;
+        startWarmer();
+    }
+
+    /**
+     * Starts the warmer thread if it isn't running, and wakes it up.
+     * Must be called with the lock held.
+     */
+    private void startWarmer() {
+        if (mWarmer == null) {
+            mWarmer = new Thread("NoteSampleCache") {
+                @Override
+                public void run() {
+                    runWarmer();
+                }
+            };
+            mWarmer.setPriority(Thread.MIN_PRIORITY);
+            mWarmer.setDaemon(true);
+            mWarmer.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * The warmer thread: renders one note at a time, so that new work
+     * can be picked up between notes.
+     */
+    private void runWarmer() {
+        while (true) {
+            int instrument;
+            int fade;
+            int[] notes;
+            synchronized (this) {
+                while (mPendingChord == null && mWarmNext >= mWarmNotes.length) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (mPendingChord != null) {
+                    Chord c = mPendingChord;
+                    mPendingChord = null;
+                    instrument = c.getInstrument();
+                    fade = mPendingFade;
+                    notes = c.getNotes();
+                } else {
+                    instrument = mWarmInstrument;
+                    fade = mWarmFade;
+                    notes = new int[] { mWarmNotes[mWarmNext++] };
+                }
+            }
+            for (int note : notes)
+                get(instrument, fade, note);
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void invalidate() {
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Returns the number of lookups that found a rendered note.
+     * @return The number of cache hits.
+     */
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of lookups that had to render a note.
+     * @return The number of cache misses.
+     */
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * Returns the number of notes removed to stay within the memory cap.
+     * @return The number of evictions.
+     */
+    public synchronized int getEvictions() {
+        return mEvictions;
+    }
+
+    /**
+     * Returns the memory currently used by the cache.
+     * @return The number of bytes of samples.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "NoteSampleCache[notes=" + mEntries.size() + ", bytes=" + mSize
+            + ", hits=" + mHits + ", misses=" + mMisses
+            + ", evictions=" + mEvictions + "]";
+    }
+
+    /**
+     * Evicts least recently used entries until the cache is within its
+     * cap.  Must be called with the lock held.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Integer, Entry>> it = mEntries.entrySet().iterator();
+        while (mSize > mCap && it.hasNext()) {
+            Map.Entry<Integer, Entry> e = it.next();
+            mSize -= e.getValue().mSamples.capacity();
+            it.remove();
+            mEvictions++;
+        }
+    }
+
+    private static Integer key(int instrument, int note) {
+        return Integer.valueOf(instrument * 128 + note);
+    }
+
+    private static ShortBuffer view(ByteBuffer samples) {
+        return samples.asReadOnlyBuffer().order(ByteOrder.nativeOrder()).asShortBuffer();
+    }
+
+    /**
+     * Renders one note into a new direct buffer.
+     */
+    private static ByteBuffer render(int instrument, int fade, int note, int sampleRate, int holdTime) {
+        Timbre timbre = Timbre.forInstrument(instrument, fade);
+        long hold = (long) holdTime * sampleRate / 1000;
+        int frames = (int) (hold + (long) timbre.getRelease() * sampleRate / 1000 + 1);
+        ByteBuffer samples = ByteBuffer.allocateDirect(frames * 2).order(ByteOrder.nativeOrder());
+        ShortBuffer out = samples.asShortBuffer();
+
+        SynthVoice voice = new SynthVoice();
+        voice.start(note, timbre, sampleRate, 0, hold);
+        float[] mix = new float[sRENDER_BLOCK];
+        short[] pcm = new short[sRENDER_BLOCK];
+        for (int done = 0; done < frames; done += sRENDER_BLOCK) {
+            int n = Math.min(sRENDER_BLOCK, frames - done);
+            for (int i = 0; i < n; i++)
+                mix[i] = 0F;
+            voice.render(mix, 0, n, sNOTE_GAIN);
+            ChordRenderer.toPcm16(mix, 0, pcm, 0, n);
+            out.put(pcm, 0, n);
+        }
+        return samples;
+    }
+
+}
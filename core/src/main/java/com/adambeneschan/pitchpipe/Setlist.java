@@ -0,0 +1,238 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * An ordered list of saved chords, e.g. the starting pitches for the songs
+ * of a concert in the order they will be sung.  Each entry has a name and
+ * a {@link Chord}, which holds the instrument, duration and roll delay as
+ * well as the notes.  The setlist keeps track of which entry was played
+ * last, so that the player can step through it with {@link #next}, and
+ * can say which entry is coming up ({@link #peekNext}) so that it can be
+ * prepared while the current one sounds.
+ * <p>
+ * A setlist is saved as text, one entry per line: the instrument,
+ * duration, delay and notes (separated by commas), then the name, all
+ * separated by tabs.
+ * @author Adam Beneschan
+ */
+public class Setlist {
+
+    /**
+     * One saved chord in a setlist.
+     */
+    public static class Entry {
+        private final String mName;
+        private final Chord mChord;
+
+        /**
+         * Constructs an Entry.
+         * @param name The name shown for the entry, e.g. the song title.
+         * Tabs and line breaks are replaced by spaces.
+         * @param chord The chord to play.
+         */
+        public Entry(String name, Chord chord) {
+            mName = name.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+            mChord = chord;
+        }
+
+        /**
+         * Returns the name of the entry.
+         * @return The name.
+         */
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Returns the chord to play.
+         * @return The chord.
+         */
+        public Chord getChord() {
+            return mChord;
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": " + mChord;
+        }
+    }
+
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+    private int mPosition = -1;
+
+    /**
+     * Returns the number of entries.
+     * @return The number of entries.
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns an entry.
+     * @param index The index of the entry, from 0.
+     * @return The entry.
+     */
+    public Entry get(int index) {
+        return mEntries.get(index);
+    }
+
+    /**
+     * Adds an entry at the end.
+     * @param entry The entry.
+     */
+    public void add(Entry entry) {
+        mEntries.add(entry);
+    }
+
+    /**
+     * Removes an entry.  If it was at or before the last entry played, the
+     * position moves back so that the same entry comes next.
+     * @param index The index of the entry.
+     * @return The entry removed.
+     */
+    public Entry remove(int index) {
+        Entry e = mEntries.remove(index);
+        if (index <= mPosition)
+            mPosition--;
+        return e;
+    }
+
+    /**
+     * Moves an entry to another place in the order.  The position is
+     * left alone.
+     * @param from The index of the entry.
+     * @param to The index it is to have.
+     */
+    public void move(int from, int to) {
+        mEntries.add(to, mEntries.remove(from));
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        mEntries.clear();
+        mPosition = -1;
+    }
+
+    /**
+     * Returns the index of the entry played last.
+     * @return The index, or -1 if none has been played since the start.
+     */
+    public int getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Goes back to the start, so that the first entry is played next.
+     */
+    public void rewind() {
+        mPosition = -1;
+    }
+
+    /**
+     * Returns the entry played last.
+     * @return The entry, or {@code null} if none has been played since the
+     * start.
+     */
+    public Entry current() {
+        return (mPosition >= 0 && mPosition < mEntries.size()) ? mEntries.get(mPosition) : null;
+    }
+
+    /**
+     * Returns the entry that {@link #next} will return, without moving.
+     * @return The entry, or {@code null} at the end of the setlist.
+     */
+    public Entry peekNext() {
+        int n = mPosition + 1;
+        return (n < mEntries.size()) ? mEntries.get(n) : null;
+    }
+
+    /**
+     * Moves on to the next entry.
+     * @return The entry, or {@code null} (without moving) at the end of
+     * the setlist.
+     */
+    public Entry next() {
+        Entry e = peekNext();
+        if (e != null)
+            mPosition++;
+        return e;
+    }
+
+    /**
+     * Moves back to the entry before the one played last.
+     * @return The entry, or {@code null} (without moving) at the start of
+     * the setlist.
+     */
+    public Entry previous() {
+        if (mPosition <= 0)
+            return null;
+        return mEntries.get(--mPosition);
+    }
+
+    /**
+     * Writes the entries as text.  The position isn't saved.
+     * @param w Where to write them.
+     * @throws IOException if they can't be written.
+     */
+    public void write(Writer w) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Entry e : mEntries) {
+            Chord c = e.getChord();
+            sb.setLength(0);
+            sb.append(c.getInstrument()).append('\t')
+              .append(c.getDuration()).append('\t')
+              .append(c.getDelay()).append('\t');
+            for (int i = 0; i < c.getNoteCount(); i++) {
+                if (i > 0)
+                    sb.append(',');
+                sb.append(c.getNote(i));
+            }
+            sb.append('\t').append(e.getName()).append('\n');
+            w.write(sb.toString());
+        }
+    }
+
+    /**
+     * Reads a setlist written by {@link #write}.  Blank lines are skipped.
+     * @param r Where to read it from.
+     * @return The setlist, positioned at the start.
+     * @throws IOException if it can't be read or isn't in the right form.
+     */
+    public static Setlist read(Reader r) throws IOException {
+        Setlist list = new Setlist();
+        BufferedReader br = new BufferedReader(r);
+        String line;
+        int lineNumber = 0;
+        while ((line = br.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().length() == 0)
+                continue;
+            String[] fields = line.split("\t", 5);
+            if (fields.length != 5)
+                throw new IOException("Bad setlist entry at line " + lineNumber);
+            try {
+                int instrument = Integer.parseInt(fields[0]);
+                int duration = Integer.parseInt(fields[1]);
+                int delay = Integer.parseInt(fields[2]);
+                String[] noteFields = (fields[3].length() == 0) ? new String[0] : fields[3].split(",");
+                int[] notes = new int[noteFields.length];
+                for (int i = 0; i < notes.length; i++)
+                    notes[i] = Integer.parseInt(noteFields[i]);
+                list.add(new Entry(fields[4], new Chord(notes, instrument, duration, delay)));
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException is one of these
+                throw new IOException("Bad setlist entry at line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.adambeneschan.pitchpipe;
+
+/**
+ * One note of the PCM synthesizer: a wavetable oscillator with an
+ * attack/fade/release envelope.  A voice can be started, optionally after
+ * a delay, and released at a given time or on demand; it is reused for
+ * any number of notes, and rendering does no allocation.
+ * @author Adam Beneschan
+ */
+public class SynthVoice {
+
+    // Level (relative to full volume) treated as silence: -60 dB
+    private static final float sSILENT = 0.001F;
+
+    private static final int sIDLE = 0;
+    private static final int sWAITING = 1;
+    private static final int sATTACK = 2;
+    private static final int sSUSTAIN = 3;
+    private static final int sRELEASE = 4;
+
+    private int mState = sIDLE;
+    private int mNote;
+    private float[] mTable;
+    private float mPhase;
+    private float mIncrement;
+    private float mLevel;
+    private float mAttackStep;
+    private float mFadeFactor;
+    private float mReleaseFactor;
+    private long mStartCountdown;
+    private long mReleaseCountdown;
+
+    /**
+     * Starts a note.  Any note the voice was playing is cut off.
+     * @param note The note, as a MIDI note (60=middle C).
+     * @param timbre The sound of the note.
+     * @param sampleRate The output sample rate, in Hz.
+     * @param startDelay The number of frames to wait before the note
+     * starts sounding.
+     * @param releaseAt The number of frames, counted from now (not from
+     * the end of {@code startDelay}), after which the note is released, or
+     * -1 if the note is held until {@link #release} is called.
+     */
+    public void start(int note, Timbre timbre, int sampleRate, long startDelay, long releaseAt) {
+        mNote = note;
+        mTable = timbre.getTable();
+        double freq = 440.0 * Math.pow(2.0, (note - 69) / 12.0);
+        mIncrement = (float) (freq * Timbre.TABLE_SIZE / sampleRate);
+        mPhase = 0F;
+        mLevel = 0F;
+        mAttackStep = 1F / Math.max(1F, timbre.getAttack() * sampleRate / 1000F);
+        mFadeFactor = decayFactor(timbre.getFade(), sampleRate);
+        mReleaseFactor = decayFactor(timbre.getRelease(), sampleRate);
+        mStartCountdown = startDelay;
+        mReleaseCountdown = releaseAt;
+        mState = sWAITING;
+    }
+
+    /**
+     * Releases the note, so that it dies away over the timbre's release
+     * time.  Does nothing if the voice is idle.
+     */
+    public void release() {
+        if (mState == sWAITING)
+            mState = sIDLE;   // never started, so there's nothing to hear
+        else if (mState != sIDLE)
+            mState = sRELEASE;
+    }
+
+    /**
+     * Reschedules the release of a note that has not been released yet.
+     * Does nothing if the voice is idle or already releasing.
+     * @param releaseAt The number of frames from now after which the note
+     * is released, or -1 to hold it until {@link #release} is called.
+     */
+    public void setReleaseAt(long releaseAt) {
+        if (mState != sIDLE && mState != sRELEASE)
+            mReleaseCountdown = releaseAt;
+    }
+
+    /**
+     * Silences the voice immediately.
+     */
+    public void kill() {
+        mState = sIDLE;
+    }
+
+    /**
+     * Tests whether the voice is doing anything.
+     * @return {@code true} if the voice is waiting to start or is sounding.
+     */
+    public boolean isActive() {
+        return mState != sIDLE;
+    }
+
+    /**
+     * Tests whether the voice's note is still held.
+     * @return {@code true} if the voice is waiting to start or is sounding
+     * and has not been released.
+     */
+    public boolean isHeld() {
+        return mState != sIDLE && mState != sRELEASE;
+    }
+
+    /**
+     * Returns the note the voice is playing or last played.
+     * @return The note, as a MIDI note.
+     */
+    public int getNote() {
+        return mNote;
+    }
+
+    /**
+     * Renders the voice, adding its samples to a mix buffer.
+     * @param mix The mix buffer.
+     * @param offset The index of the first frame to add to.
+     * @param frames The number of frames to render.
+     * @param gain A factor applied to the voice's samples.
+     */
+    public void render(float[] mix, int offset, int frames, float gain) {
+        int end = offset + frames;
+        int mask = Timbre.TABLE_SIZE - 1;
+        for (int i = offset; i < end && mState != sIDLE; i++) {
+            if (mReleaseCountdown >= 0 && mReleaseCountdown-- == 0)
+                release();
+            if (mState == sWAITING) {
+                if (mStartCountdown-- > 0)
+                    continue;
+                mState = sATTACK;
+            }
+            switch (mState) {
+                case sATTACK:
+                    mLevel += mAttackStep;
+                    if (mLevel >= 1F) {
+                        mLevel = 1F;
+                        mState = sSUSTAIN;
+                    }
+                    break;
+                case sSUSTAIN:
+                    mLevel *= mFadeFactor;
+                    break;
+                case sRELEASE:
+                    mLevel *= mReleaseFactor;
+                    break;
+                default:
+                    break;
+            }
+            if (mState == sIDLE)
+                break;
+            if (mLevel < sSILENT && mState != sATTACK) {
+                mState = sIDLE;
+                break;
+            }
+
+            // Linear interpolation between wavetable entries
+            int idx = (int) mPhase;
+            float frac = mPhase - idx;
+            float a = mTable[idx & mask];
+            float b = mTable[(idx + 1) & mask];
+            mix[i] += (a + (b - a) * frac) * mLevel * gain;
+            mPhase += mIncrement;
+            if (mPhase >= Timbre.TABLE_SIZE)
+                mPhase -= Timbre.TABLE_SIZE;
+        }
+    }
+
+    /**
+     * Returns the per-frame factor by which the level is multiplied so
+     * that it reaches silence after a given time.
+     */
+    static float decayFactor(int time, int sampleRate) {
+        if (time == Integer.MAX_VALUE)
+            return 1F;   // no decay
+        double frames = Math.max(1.0, (double) time * sampleRate / 1000.0);
+        return (float) Math.exp(Math.log(sSILENT) / frames);
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.adambeneschan.pitchpipe;
+
+/**
+ * The sound of an instrument for the PCM synthesizer: a single-cycle
+ * wavetable plus attack, release and fade times.  The wavetable is chosen
+ * from the General MIDI family of the instrument (pianos, organs, strings,
+ * ...); it is only an approximation of the real instrument, but it is
+ * enough to give singers their pitches.
+ * @author Adam Beneschan
+ */
+public class Timbre {
+
+    /** The number of samples in one cycle of a wavetable. */
+    public static final int TABLE_SIZE = 2048;
+
+    // Relative amplitudes of the first few harmonics, and the attack and
+    // release times in ms, for each of the 16 General MIDI families
+    // (program codes 1-8, 9-16, ...).
+    private static final float[][] sHarmonics = new float[][] {
+        { 1F, .5F, .3F, .2F, .12F, .08F, .05F, .03F },   // piano
+        { 1F, 0F, .3F, 0F, .1F },                        // chromatic percussion
+        { 1F, 1F, .6F, .5F, 0F, .3F, 0F, .3F },          // organ
+        { 1F, .6F, .4F, .25F, .15F, .1F },               // guitar
+        { 1F, .4F, .2F },                                // bass
+        { 1F, .5F, .33F, .25F, .2F, .17F, .14F, .12F },  // strings
+        { 1F, .5F, .33F, .25F, .2F },                    // ensemble, choir
+        { 1F, .8F, .6F, .5F, .4F, .3F },                 // brass
+        { 1F, 0F, .5F, 0F, .3F, 0F, .2F },               // reed
+        { 1F, .1F, .05F },                               // pipe
+        { 1F, .5F, .33F, .25F, .2F, .17F },              // synth lead
+        { 1F, .3F, .1F },                                // synth pad
+        { 1F, .3F, .2F, .1F },                           // synth effects
+        { 1F, .4F, .3F, .1F },                           // ethnic
+        { 1F, .2F, .1F },                                // percussive
+        { 1F, .5F, .25F },                               // sound effects
+    };
+    private static final int[] sAttack = new int[] {
+        5, 2, 10, 5, 10, 60, 80, 40, 30, 40, 20, 100, 20, 10, 2, 20
+    };
+    private static final int[] sRelease = new int[] {
+        150, 200, 60, 150, 100, 200, 250, 120, 100, 120, 100, 300, 200, 150, 150, 150
+    };
+
+    private static final float[][] sTables = new float[sHarmonics.length][];
+
+    private float[] mTable;
+    private int mAttack;
+    private int mRelease;
+    private int mFade;
+
+    /**
+     * Constructs a Timbre.
+     * @param table One cycle of the waveform, {@link #TABLE_SIZE} samples,
+     * with a peak amplitude of at most 1.
+     * @param attack The time in milliseconds for a note to reach full volume.
+     * @param release The time in milliseconds for a note to die away after
+     * it is released.
+     * @param fade The approximate time, in milliseconds, until a note
+     * becomes inaudible after it has started playing, or
+     * {@code Integer.MAX_VALUE} if the note does not fade.
+     */
+    public Timbre(float[] table, int attack, int release, int fade) {
+        mTable = table;
+        mAttack = attack;
+        mRelease = release;
+        mFade = fade;
+    }
+
+    /**
+     * Returns a Timbre for a MIDI instrument.
+     * @param code The MIDI instrument code (see http://www.midi.org/techspecs/gm1sound.php).
+     * @param fade The approximate fade-out time (see
+     * {@link MidiInstrument#getFade()}).
+     * @return The Timbre.
+     */
+    public static Timbre forInstrument(int code, int fade) {
+        int family = Math.max(0, Math.min(127, code - 1)) / 8;
+        return new Timbre(table(family), sAttack[family], sRelease[family], fade);
+    }
+
+    /**
+     * Returns a Timbre for a MIDI instrument.
+     * @param instr The instrument.
+     * @return The Timbre.
+     */
+    public static Timbre forInstrument(MidiInstrument instr) {
+        return forInstrument(instr.getCode(), instr.getFade());
+    }
+
+    /**
+     * Returns the wavetable.
+     * @return One cycle of the waveform.  The caller must not modify it.
+     */
+    public float[] getTable() {
+        return mTable;
+    }
+
+    /**
+     * Returns the attack time.
+     * @return The time in milliseconds for a note to reach full volume.
+     */
+    public int getAttack() {
+        return mAttack;
+    }
+
+    /**
+     * Returns the release time.
+     * @return The time in milliseconds for a note to die away after it is
+     * released.
+     */
+    public int getRelease() {
+        return mRelease;
+    }
+
+    /**
+     * Returns the fade-out time.
+     * @return The approximate time, in milliseconds, until a note becomes
+     * inaudible after it has started playing, or {@code Integer.MAX_VALUE}
+     * if the note does not fade.
+     */
+    public int getFade() {
+        return mFade;
+    }
+
+    /**
+     * Returns the wavetable for a family, building it the first time.
+     */
+    private static float[] table(int family) {
+        synchronized (sTables) {
+            if (sTables[family] == null) {
+                float[] harmonics = sHarmonics[family];
+                float[] t = new float[TABLE_SIZE];
+                float peak = 0F;
+                for (int i = 0; i < TABLE_SIZE; i++) {
+                    double phase = 2 * Math.PI * i / TABLE_SIZE;
+                    double v = 0;
+                    for (int h = 0; h < harmonics.length; h++)
+                        v += harmonics[h] * Math.sin((h + 1) * phase);
+                    t[i] = (float) v;
+                    peak = Math.max(peak, Math.abs(t[i]));
+                }
+                for (int i = 0; i < TABLE_SIZE; i++)
+                    t[i] /= peak;   // normalize to a peak of 1
+                sTables[family] = t;
+            }
+            return sTables[family];
+        }
+    }
+
+}
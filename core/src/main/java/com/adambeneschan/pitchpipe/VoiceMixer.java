@@ -0,0 +1,269 @@
+package com.adambeneschan.pitchpipe;
+
+
+/**
+ * The mixing half of the live audio engine: a fixed set of
+ * {@link SynthVoice}s driven by commands from a {@link CommandRing}.
+ * Commands can start and release single notes, start a whole chord, add a
+ * note to the chord that is sounding, stop everything, or change the
+ * instrument.  Nothing here allocates or takes a
+ * lock, so it can run on an audio render thread.  This class does not
+ * depend on Android.
+ * @author Adam Beneschan
+ */
+public class VoiceMixer {
+
+    /**
+     * Command: start a note.  arg1 = the MIDI note; arg2 = the time in ms
+     * after which the note is released, or -1 to hold it until a
+     * {@link #CMD_NOTE_OFF} or {@link #CMD_STOP}.
+     */
+    public static final int CMD_NOTE_ON = 1;
+
+    /**
+     * Command: release every voice playing a note.  arg1 = the MIDI note.
+     */
+    public static final int CMD_NOTE_OFF = 2;
+
+    /**
+     * Command: release everything that is sounding and play a chord.
+     * obj = the {@link Chord}; arg1 = a generation number that
+     * {@link #getGeneration()} reports afterwards.  The chord's instrument
+     * is not used; send {@link #CMD_INSTRUMENT} first if it changes.
+     */
+    public static final int CMD_PLAY = 3;
+
+    /**
+     * Command: release everything that is sounding.
+     */
+    public static final int CMD_STOP = 4;
+
+    /**
+     * Command: use a different instrument for notes started from now on.
+     * obj = the {@link Timbre}.
+     */
+    public static final int CMD_INSTRUMENT = 5;
+
+    /**
+     * Command: add a note to the chord that is sounding, leaving the
+     * chord's other voices running.  obj = the whole {@link Chord},
+     * ending with the added note; arg1 = a generation number, as for
+     * {@link #CMD_PLAY}.  The new note and all the chord's notes that are
+     * still held are released after the chord's duration.  If none of
+     * the chord's notes is still held (e.g. it died away before the
+     * command arrived), the whole chord is played instead, so a lone
+     * note is never started.
+     */
+    public static final int CMD_ADD_NOTE = 6;
+
+    // Volume of each voice; fixed, so that voices starting and stopping
+    // don't change the volume of the others
+    private static final float sVOICE_GAIN = 0.2F;
+
+    private final int mSampleRate;
+    private final SynthVoice[] mVoices;
+    private final long[] mStartedAt;
+    private long mCounter = 0;
+    private Timbre mTimbre;
+    private int mGeneration = 0;
+
+    /**
+     * Constructs a VoiceMixer.
+     * @param sampleRate The output sample rate, in Hz.
+     * @param maxVoices The number of voices; when all are in use, starting
+     * a note takes over the voice that was started longest ago.
+     * @param timbre The instrument to use until a {@link #CMD_INSTRUMENT}.
+     */
+    public VoiceMixer(int sampleRate, int maxVoices, Timbre timbre) {
+        mSampleRate = sampleRate;
+        mVoices = new SynthVoice[maxVoices];
+        mStartedAt = new long[maxVoices];
+        for (int i = 0; i < maxVoices; i++)
+            mVoices[i] = new SynthVoice();
+        mTimbre = timbre;
+    }
+
+    /**
+     * Carries out all the commands waiting in a ring.
+     * @param ring The ring; this thread must be its consumer.
+     */
+    public void drain(CommandRing ring) {
+        while (ring.poll())
+            execute(ring.type(), ring.arg1(), ring.arg2(), ring.obj());
+    }
+
+    /**
+     * Carries out one command.
+     * @param type The command type, one of the {@code CMD_} constants.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @param obj The object argument.
+     */
+    public void execute(int type, int arg1, int arg2, Object obj) {
+        switch (type) {
+            case CMD_NOTE_ON:
+                noteOn(arg1, 0, arg2 < 0 ? -1 : frames(arg2));
+                break;
+            case CMD_NOTE_OFF:
+                noteOff(arg1);
+                break;
+            case CMD_PLAY:
+                play((Chord) obj, arg1);
+                break;
+            case CMD_STOP:
+                stop();
+                break;
+            case CMD_INSTRUMENT:
+                mTimbre = (Timbre) obj;
+                break;
+            case CMD_ADD_NOTE:
+                addNote((Chord) obj, arg1);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Starts a note on a free voice, or on the oldest voice if none is free.
+     * @param note The note, as a MIDI note (60=middle C).
+     * @param startDelay The number of frames to wait before starting.
+     * @param releaseAt The number of frames after which the note is
+     * released, or -1 to hold it.
+     */
+    public void noteOn(int note, long startDelay, long releaseAt) {
+        int best = 0;
+        for (int i = 0; i < mVoices.length; i++) {
+            if (!mVoices[i].isActive()) {
+                best = i;
+                break;
+            }
+            if (mStartedAt[i] < mStartedAt[best])
+                best = i;
+        }
+        mVoices[best].start(note, mTimbre, mSampleRate, startDelay, releaseAt);
+        mStartedAt[best] = mCounter++;
+    }
+
+    /**
+     * Releases every voice playing a note.
+     * @param note The note, as a MIDI note.
+     */
+    public void noteOff(int note) {
+        for (SynthVoice v : mVoices) {
+            if (v.isActive() && v.getNote() == note)
+                v.release();
+        }
+    }
+
+    /**
+     * Releases everything that is sounding and plays a chord, rolled and
+     * held as described by {@link Chord}.
+     * @param c The chord.
+     * @param generation A number that {@link #getGeneration()} will return.
+     */
+    public void play(Chord c, int generation) {
+        stop();
+        int n = c.getNoteCount();
+        long delay = frames(c.getDelay());
+        long releaseAt = delay * (n - 1) + frames(c.getDuration());
+        for (int i = 0; i < n; i++)
+            noteOn(c.getNote(i), delay * i, releaseAt);
+        mGeneration = generation;
+    }
+
+    /**
+     * Adds a note to the chord that is sounding.  The notes that are still
+     * held are held for the same time as the new note, so that the chord
+     * is released together.  If no note is held any more, plays the whole
+     * chord instead.
+     * @param c The whole chord, ending with the added note.
+     * @param generation A number that {@link #getGeneration()} will return.
+     */
+    public void addNote(Chord c, int generation) {
+        if (!isHeld()) {
+            play(c, generation);
+            return;
+        }
+        long releaseAt = frames(c.getDuration());
+        for (SynthVoice v : mVoices)
+            v.setReleaseAt(releaseAt);
+        noteOn(c.getNote(c.getNoteCount() - 1), 0, releaseAt);
+        mGeneration = generation;
+    }
+
+    /**
+     * Releases everything that is sounding.
+     */
+    public void stop() {
+        for (SynthVoice v : mVoices)
+            v.release();
+    }
+
+    /**
+     * Returns the generation number of the last chord played.
+     * @return The number passed with the last {@link #CMD_PLAY} or
+     * {@link #CMD_ADD_NOTE}.
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Tests whether anything is sounding or about to sound.
+     * @return {@code true} if any voice is active.
+     */
+    public boolean isActive() {
+        for (SynthVoice v : mVoices) {
+            if (v.isActive())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether any note is still held, i.e. is sounding or about to
+     * sound and has not been released.
+     * @return {@code true} if any voice is held.
+     */
+    public boolean isHeld() {
+        for (SynthVoice v : mVoices) {
+            if (v.isHeld())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of voices that are doing anything.
+     * @return The number of active voices.
+     */
+    public int getActiveCount() {
+        int n = 0;
+        for (SynthVoice v : mVoices) {
+            if (v.isActive())
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * Renders the next frames of all voices.
+     * @param mix The buffer that receives the mixed samples; it is cleared
+     * first.
+     * @param frames The number of frames to render.
+     */
+    public void render(float[] mix, int frames) {
+        for (int i = 0; i < frames; i++)
+            mix[i] = 0F;
+        for (SynthVoice v : mVoices) {
+            if (v.isActive())
+                v.render(mix, 0, frames, sVOICE_GAIN);
+        }
+    }
+
+    private long frames(int time) {
+        return (long) time * mSampleRate / 1000;
+    }
+
+}
@@ -0,0 +1,309 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders chords offline with the PCM synthesizer and writes them to a WAV
+ * file, e.g. to export the starting pitches of a setlist for singers to
+ * practice with.  The chords are played one after another, with a gap of
+ * silence between them.  The audio is produced a block at a time: the
+ * voices of the chord are rendered in parallel on a fork/join pool, each
+ * into its own buffer, then mixed (always in the same order, so the
+ * result is the same however the work is split) and written through a
+ * {@code FileChannel}.  Only one block is held in memory, however long
+ * the file is.  The WAV header is written first with the sizes left at 0,
+ * and filled in once the length is known.  A chord sounds the same as it
+ * would through {@link ChordRenderer}.
+ * @author Adam Beneschan
+ */
+public class WavRenderer {
+
+    /** The number of frames rendered at a time. */
+    public static final int BLOCK_FRAMES = 16384;
+
+    private static final int sHEADER_SIZE = 44;
+
+    /**
+     * What a render did and how fast it was.
+     */
+    public static class Result {
+        private final long mFrames;
+        private final int mSampleRate;
+        private final long mBytes;
+        private final long mElapsed;
+
+        private Result(long frames, int sampleRate, long bytes, long elapsed) {
+            mFrames = frames;
+            mSampleRate = sampleRate;
+            mBytes = bytes;
+            mElapsed = elapsed;
+        }
+
+        /**
+         * Returns the length of the audio.
+         * @return The number of frames written.
+         */
+        public long getFrames() {
+            return mFrames;
+        }
+
+        /**
+         * Returns the size of the file.
+         * @return The number of bytes written, including the header.
+         */
+        public long getBytes() {
+            return mBytes;
+        }
+
+        /**
+         * Returns how long the render took.
+         * @return The time, in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return mElapsed;
+        }
+
+        /**
+         * Returns how much faster than realtime the render was.
+         * @return The length of the audio divided by the time taken to
+         * render it; e.g. 50 means a minute of audio took 1.2 seconds.
+         */
+        public double getRealtimeFactor() {
+            double seconds = (double) mFrames / mSampleRate;
+            return seconds / Math.max(1e-9, mElapsed / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f s of audio in %.3f s (%.1fx realtime)",
+                                 (double) mFrames / mSampleRate, mElapsed / 1e9, getRealtimeFactor());
+        }
+    }
+
+    private final int mSampleRate;
+    private final int mBytesPerSample;
+    private final InstrumentTable mInstruments;
+    private final ForkJoinPool mPool;
+
+    private SynthVoice[] mVoices = new SynthVoice[0];
+    private float[][] mVoiceBlocks = new float[0][];
+    private final float[] mMix = new float[BLOCK_FRAMES];
+    private final ByteBuffer mOut;
+
+    /**
+     * Constructs a WavRenderer.
+     * @param sampleRate The sample rate, in Hz.
+     * @param bitsPerSample 16 or 24.
+     * @param instruments Where to find each instrument's fade-out time,
+     * or {@code null} if no instrument fades.
+     * @param pool The pool on which the voices are rendered.
+     * @throws IllegalArgumentException if {@code bitsPerSample} is not
+     * 16 or 24.
+     */
+    public WavRenderer(int sampleRate, int bitsPerSample, InstrumentTable instruments, ForkJoinPool pool) {
+        if (bitsPerSample != 16 && bitsPerSample != 24)
+            throw new IllegalArgumentException("Unsupported bits per sample: " + bitsPerSample);
+        mSampleRate = sampleRate;
+        mBytesPerSample = bitsPerSample / 8;
+        mInstruments = instruments;
+        mPool = pool;
+        mOut = ByteBuffer.allocateDirect(BLOCK_FRAMES * mBytesPerSample).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Renders chords to a WAV file, replacing anything already in it.
+     * @param chords The chords, in the order they are to be heard.
+     * @param gap The silence after each chord has died away, in
+     * milliseconds.
+     * @param f The file.
+     * @return The length of the audio and the time taken.
+     * @throws IOException if the file can't be written.
+     */
+    public Result render(List<Chord> chords, int gap, File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            raf.setLength(0);
+            return render(chords, gap, raf.getChannel());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Renders chords to a WAV file through a channel.  The file is written
+     * from position 0; the channel is not closed.
+     * @param chords The chords, in the order they are to be heard.
+     * @param gap The silence after each chord has died away, in
+     * milliseconds.
+     * @param channel The channel.
+     * @return The length of the audio and the time taken.
+     * @throws IOException if the file can't be written.
+     */
+    public synchronized Result render(List<Chord> chords, int gap, FileChannel channel) throws IOException {
+        long start = System.nanoTime();
+        channel.position(sHEADER_SIZE);
+        long frames = 0;
+        for (int i = 0; i < chords.size(); i++) {
+            frames += renderChord(chords.get(i), channel);
+            if (gap > 0 && i < chords.size() - 1)
+                frames += writeSilence(frames(gap), channel);
+        }
+        long dataBytes = frames * mBytesPerSample;
+        writeFully(channel, header(dataBytes), 0);
+        channel.force(false);
+        return new Result(frames, mSampleRate, sHEADER_SIZE + dataBytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Renders one chord and writes it at the channel's position.
+     * @return The number of frames written.
+     */
+    private long renderChord(Chord c, FileChannel channel) throws IOException {
+        MidiInstrument instr = (mInstruments == null) ? null : mInstruments.instrumentForCode(c.getInstrument());
+        int fade = (instr == null) ? Integer.MAX_VALUE : instr.getFade();
+        Timbre timbre = Timbre.forInstrument(c.getInstrument(), fade);
+        int n = c.getNoteCount();
+        long delay = frames(c.getDelay());
+        long releaseAt = delay * Math.max(0, n - 1) + frames(c.getDuration());
+        long length = releaseAt + frames(timbre.getRelease()) + 1;
+        float gain = ChordRenderer.voiceGain(n);
+
+        ensureVoices(n);
+        for (int i = 0; i < n; i++)
+            mVoices[i].start(c.getNote(i), timbre, mSampleRate, delay * i, releaseAt);
+        for (long done = 0; done < length; done += BLOCK_FRAMES) {
+            int frames = (int) Math.min(BLOCK_FRAMES, length - done);
+            if (n > 0)
+                mPool.invoke(new VoiceTask(0, n, frames, gain));
+            for (int i = 0; i < frames; i++) {
+                float v = 0F;
+                for (int k = 0; k < n; k++)
+                    v += mVoiceBlocks[k][i];
+                mMix[i] = v;
+            }
+            writeBlock(frames, channel);
+        }
+        return length;
+    }
+
+    /**
+     * Renders the next block of a range of voices, splitting the range
+     * until each task has one voice.
+     */
+    private class VoiceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int mFrom;
+        private final int mTo;
+        private final int mFrames;
+        private final float mGain;
+
+        VoiceTask(int from, int to, int frames, float gain) {
+            mFrom = from;
+            mTo = to;
+            mFrames = frames;
+            mGain = gain;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom == 1) {
+                float[] block = mVoiceBlocks[mFrom];
+                for (int i = 0; i < mFrames; i++)
+                    block[i] = 0F;
+                mVoices[mFrom].render(block, 0, mFrames, mGain);
+                return;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new VoiceTask(mFrom, middle, mFrames, mGain),
+                      new VoiceTask(middle, mTo, mFrames, mGain));
+        }
+    }
+
+    private long writeSilence(long length, FileChannel channel) throws IOException {
+        for (int i = 0; i < BLOCK_FRAMES; i++)
+            mMix[i] = 0F;
+        for (long done = 0; done < length; done += BLOCK_FRAMES)
+            writeBlock((int) Math.min(BLOCK_FRAMES, length - done), channel);
+        return length;
+    }
+
+    /**
+     * Converts the first frames of mMix to PCM and writes them at the
+     * channel's position.
+     */
+    private void writeBlock(int frames, FileChannel channel) throws IOException {
+        mOut.clear();
+        if (mBytesPerSample == 2) {
+            for (int i = 0; i < frames; i++)
+                mOut.putShort((short) (clip(mMix[i]) * 32767F));
+        } else {
+            for (int i = 0; i < frames; i++) {
+                int v = (int) (clip(mMix[i]) * 8388607F);
+                mOut.put((byte) v);
+                mOut.put((byte) (v >> 8));
+                mOut.put((byte) (v >> 16));
+            }
+        }
+        mOut.flip();
+        while (mOut.hasRemaining())
+            channel.write(mOut);
+    }
+
+    /**
+     * Returns a canonical 44-byte header for mono PCM data.
+     */
+    private ByteBuffer header(long dataBytes) throws IOException {
+        if (dataBytes > 0xFFFFFFFFL - 36)
+            throw new IOException("Too long for a WAV file");
+        ByteBuffer h = ByteBuffer.allocate(sHEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        h.put(new byte[] { 'R', 'I', 'F', 'F' });
+        h.putInt((int) (36 + dataBytes));
+        h.put(new byte[] { 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' });
+        h.putInt(16);                                   // size of fmt chunk
+        h.putShort((short) 1);                          // PCM
+        h.putShort((short) 1);                          // mono
+        h.putInt(mSampleRate);
+        h.putInt(mSampleRate * mBytesPerSample);        // bytes per second
+        h.putShort((short) mBytesPerSample);            // bytes per frame
+        h.putShort((short) (8 * mBytesPerSample));
+        h.put(new byte[] { 'd', 'a', 't', 'a' });
+        h.putInt((int) dataBytes);
+        h.flip();
+        return h;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining())
+            position += channel.write(buf, position);
+    }
+
+    private void ensureVoices(int n) {
+        if (mVoices.length >= n)
+            return;
+        SynthVoice[] voices = new SynthVoice[n];
+        float[][] blocks = new float[n][];
+        for (int i = 0; i < n; i++) {
+            voices[i] = (i < mVoices.length) ? mVoices[i] : new SynthVoice();
+            blocks[i] = (i < mVoiceBlocks.length) ? mVoiceBlocks[i] : new float[BLOCK_FRAMES];
+        }
+        mVoices = voices;
+        mVoiceBlocks = blocks;
+    }
+
+    private static float clip(float v) {
+        return (v > 1F) ? 1F : (v < -1F) ? -1F : v;
+    }
+
+    private long frames(int time) {
+        return (long) time * mSampleRate / 1000;
+    }
+
+}
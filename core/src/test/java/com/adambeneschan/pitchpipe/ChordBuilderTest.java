@@ -0,0 +1,126 @@
+package com.adambeneschan.pitchpipe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChordBuilderTest {
+
+    /**
+     * A ChordSink that remembers what it was given.
+     */
+    private static class RecordingSink implements ChordSink {
+        final List<Chord> mPlayed = new ArrayList<Chord>();
+        final List<Chord> mAdded = new ArrayList<Chord>();
+        final List<Chord> mPrefetched = new ArrayList<Chord>();
+        PlayStoppedListener mListener;
+
+        @Override
+        public void play(Chord chord, PlayStoppedListener l) {
+            mPlayed.add(chord);
+            mListener = l;
+        }
+
+        @Override
+        public void playAdded(Chord chord, PlayStoppedListener l) {
+            mAdded.add(chord);
+            mListener = l;
+        }
+
+        @Override
+        public void prefetch(Chord chord) {
+            mPrefetched.add(chord);
+        }
+    }
+
+    private RecordingSink mSink;
+
+    @Before
+    public void setUp() {
+        mSink = new RecordingSink();
+        ChordBuilder.setSink(mSink);
+    }
+
+    @After
+    public void tearDown() {
+        ChordBuilder.setSink(null);
+    }
+
+    @Test
+    public void playSendsCopyOfNotes() {
+        ChordBuilder b = new ChordBuilder();
+        b.add(60);
+        b.add(64);
+        b.play(53, 5000, 300);
+        b.add(67);
+
+        assertEquals(1, mSink.mPlayed.size());
+        Chord c = mSink.mPlayed.get(0);
+        assertArrayEquals(new int[] { 60, 64 }, c.getNotes());
+        assertEquals(53, c.getInstrument());
+        assertEquals(5000, c.getDuration());
+        assertEquals(300, c.getDelay());
+    }
+
+    @Test
+    public void changeLastReplacesLastNote() {
+        ChordBuilder b = new ChordBuilder();
+        b.changeLast(62);
+        assertArrayEquals(new int[] { 62 }, b.toChord(1, 100, 0).getNotes());
+        b.add(65);
+        b.changeLast(66);
+        assertArrayEquals(new int[] { 62, 66 }, b.toChord(1, 100, 0).getNotes());
+    }
+
+    @Test
+    public void playAddedAndPrefetchGoToSink() {
+        PlayStoppedListener l = new PlayStoppedListener() {
+            @Override
+            public void onPlayStopped(PlayStoppedListener.Reason reason) { }
+        };
+        ChordBuilder b = new ChordBuilder();
+        b.setPlayStoppedListener(l);
+        b.add(60);
+        b.playAdded(53, 5000);
+        b.prefetch(53, 5000, 300);
+
+        assertEquals(1, mSink.mAdded.size());
+        assertEquals(0, mSink.mAdded.get(0).getDelay());
+        assertSame(l, mSink.mListener);
+        assertEquals(b.toChord(53, 5000, 300), mSink.mPrefetched.get(0));
+    }
+
+    @Test
+    public void playWithoutSinkDoesNothing() {
+        ChordBuilder.setSink(null);
+        ChordBuilder b = new ChordBuilder();
+        b.add(60);
+        b.play(53, 5000, 0);
+        assertEquals(0, mSink.mPlayed.size());
+    }
+
+    @Test
+    public void chordEquality() {
+        ChordBuilder b = new ChordBuilder();
+        b.add(60);
+        b.add(64);
+        Chord c1 = b.toChord(53, 5000, 0);
+        Chord c2 = b.toChord(53, 5000, 0);
+        assertEquals(c1, c2);
+        assertEquals(c1.hashCode(), c2.hashCode());
+        assertNotEquals(c1, b.toChord(53, 5000, 300));
+        b.clear();
+        b.add(64);
+        b.add(60);
+        assertNotEquals(c1, b.toChord(53, 5000, 0));   // roll order matters
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.adambeneschan.pitchpipe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChordLibraryTest {
+
+    private static final String sSONGS =
+        "# key\tinstrument\tduration\tdelay\tnotes\ttitle\n"
+        + "Eb\t53\t5000\t300\t51,58,67\tAve Maria\n"
+        + "Dm\t20\t3000\t0\t50\tShenandoah\n"
+        + "-\t1\t3000\t300\t53,60,65,69\tSure on This Shining Night\n"
+        + "\n"
+        + "G\t53\t5000\t300\t43,55,62,71\tAve Verum Corpus\n"
+        + "F\t53\t5000\t0\t53,60\tThe Shining River\n";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private ChordLibrary library() throws IOException {
+        List<ChordLibrary.Song> songs = ChordLibraryGenerator.readSongs(new StringReader(sSONGS));
+        File f = mFolder.newFile("library.bin");
+        FileOutputStream fos = new FileOutputStream(f);
+        try {
+            ChordLibrary.write(songs, fos);
+        } finally {
+            fos.close();
+        }
+        return ChordLibrary.open(f);
+    }
+
+    private static int[] search(ChordLibrary library, String query) {
+        int[] results = new int[10];
+        return Arrays.copyOf(results, library.search(query, results));
+    }
+
+    @Test
+    public void readsSongs() throws IOException {
+        ChordLibrary library = library();
+        assertEquals(5, library.size());
+        assertEquals("Sure on This Shining Night", library.getTitle(2));
+        assertEquals(3, library.getKey(0));
+        assertEquals(2 + ChordLibrary.MINOR, library.getKey(1));
+        assertEquals(ChordLibrary.NO_KEY, library.getKey(2));
+        assertEquals(new Chord(new int[] { 51, 58, 67 }, 53, 5000, 300), library.getChord(0));
+        int[] notes = new int[library.getNoteCount(2)];
+        library.getNotes(2, notes);
+        assertArrayEquals(new int[] { 53, 60, 65, 69 }, notes);
+    }
+
+    @Test
+    public void shortQueryMatchesPrefixesInTitleOrder() throws IOException {
+        ChordLibrary library = library();
+        assertArrayEquals(new int[] { 0, 3 }, search(library, "av"));
+        assertArrayEquals(new int[] { 1, 2 }, search(library, "S"));
+        assertArrayEquals(new int[0], search(library, "x"));
+        assertArrayEquals(new int[0], search(library, " "));
+    }
+
+    @Test
+    public void longQueryMatchesAnywhere() throws IOException {
+        ChordLibrary library = library();
+        assertArrayEquals(new int[] { 2, 4 }, search(library, "SHINING"));
+        assertArrayEquals(new int[] { 0, 3 }, search(library, "ave "));
+        assertArrayEquals(new int[] { 1 }, search(library, "andoah"));
+        assertArrayEquals(new int[0], search(library, "shining day"));
+    }
+
+    @Test
+    public void stopsWhenResultsAreFull() throws IOException {
+        int[] results = new int[1];
+        assertEquals(1, library().search("ave", results));
+    }
+
+    @Test
+    public void namesKeys() {
+        assertEquals("F#", ChordLibrary.keyName(ChordLibrary.parseKey("f#")));
+        assertEquals("Ebm", ChordLibrary.keyName(ChordLibrary.parseKey("Ebm")));
+        assertEquals("B", ChordLibrary.keyName(ChordLibrary.parseKey("Cb")));
+        assertEquals("", ChordLibrary.keyName(ChordLibrary.parseKey("-")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedLibrary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChordLibrary.write(ChordLibraryGenerator.readSongs(new StringReader(sSONGS)), out);
+        byte[] bytes = out.toByteArray();
+        new ChordLibrary(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 4)));
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.adambeneschan.pitchpipe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ChordTest {
+
+    @Test
+    public void copiesNotes() {
+        int[] notes = { 60, 64, 67 };
+        Chord c = new Chord(notes, 53, 5000, 300);
+        notes[0] = 61;
+        assertEquals(60, c.getNote(0));
+        c.getNotes()[1] = 65;
+        assertArrayEquals(new int[] { 60, 64, 67 }, c.getNotes());
+        assertEquals(3, c.getNoteCount());
+    }
+
+    @Test
+    public void equalChordsAreInterchangeableKeys() {
+        Map<Chord, String> map = new HashMap<Chord, String>();
+        map.put(new Chord(new int[] { 48, 127, 0 }, 1, 2000, 0), "a");
+        assertEquals("a", map.get(new Chord(new int[] { 48, 127, 0 }, 1, 2000, 0)));
+    }
+
+    @Test
+    public void orderAndTimingMatter() {
+        Chord c = new Chord(new int[] { 60, 64 }, 53, 5000, 300);
+        assertNotEquals(c, new Chord(new int[] { 64, 60 }, 53, 5000, 300));
+        assertNotEquals(c, new Chord(new int[] { 60, 64 }, 54, 5000, 300));
+        assertNotEquals(c, new Chord(new int[] { 60, 64 }, 53, 4000, 300));
+        assertNotEquals(c, new Chord(new int[] { 60, 64 }, 53, 5000, 0));
+    }
+
+    @Test
+    public void containsNote() {
+        Chord c = new Chord(new int[] { 0, 63, 64, 127 }, 1, 100, 0);
+        assertTrue(c.containsNote(0));
+        assertTrue(c.containsNote(63));
+        assertTrue(c.containsNote(64));
+        assertTrue(c.containsNote(127));
+        assertFalse(c.containsNote(1));
+        assertFalse(c.containsNote(128));
+        assertFalse(c.containsNote(-1));
+    }
+
+    @Test
+    public void startsWith() {
+        Chord c = new Chord(new int[] { 60, 64, 67 }, 1, 100, 0);
+        assertTrue(c.startsWith(new Chord(new int[] { 60, 64 }, 2, 200, 300)));
+        assertTrue(c.startsWith(new Chord(new int[0], 1, 100, 0)));
+        assertFalse(c.startsWith(new Chord(new int[] { 64, 60 }, 1, 100, 0)));
+        assertFalse(c.startsWith(new Chord(new int[] { 60, 64, 67, 72 }, 1, 100, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadNote() {
+        new Chord(new int[] { 60, 128 }, 1, 100, 0);
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.adambeneschan.pitchpipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InstrumentCatalogTest {
+
+    private static final String[] sNAMES = {
+        "1;Acoustic Grand Piano", "20;Church Organ", "53;Choir Aahs" };
+    private static final String[] sLIST = { "20;none", "1;3000", "53;none", "99;1000" };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static byte[] catalog(String[] names, String[] list) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InstrumentCatalog.write(InstrumentTable.parse(names, list),
+                                InstrumentCatalog.sourceHash(names, list), out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        int hash = InstrumentCatalog.sourceHash(sNAMES, sLIST);
+        InstrumentTable table = InstrumentCatalog.read(
+            new ByteArrayInputStream(catalog(sNAMES, sLIST)), hash);
+        assertEquals(InstrumentTable.parse(sNAMES, sLIST).list(), table.list());
+        assertEquals("Choir Aahs", table.instrumentForCode(53).getName());
+        assertEquals(Integer.MAX_VALUE, table.instrumentForCode(20).getFade());
+    }
+
+    @Test
+    public void ignoresCatalogOfOtherStrings() throws IOException {
+        String[] translated = { "1;Flügel", "20;Kirchenorgel", "53;Chor Aahs" };
+        int hash = InstrumentCatalog.sourceHash(translated, sLIST);
+        assertNull(InstrumentCatalog.read(new ByteArrayInputStream(catalog(sNAMES, sLIST)), hash));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherData() throws IOException {
+        InstrumentCatalog.read(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6 }), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedCatalog() throws IOException {
+        byte[] bytes = catalog(sNAMES, sLIST);
+        InstrumentCatalog.read(new ByteArrayInputStream(bytes, 0, bytes.length - 3),
+                               InstrumentCatalog.sourceHash(sNAMES, sLIST));
+    }
+
+    @Test
+    public void generatesCatalogFromResources() throws Exception {
+        File res = new File("../res");
+        File out = new File(mFolder.getRoot(), "assets/" + InstrumentCatalog.ASSET_NAME);
+        InstrumentCatalogGenerator.main(new String[] { res.getPath(), out.getPath() });
+
+        String[] names = InstrumentCatalogGenerator.readArray(
+            new File(res, "values/instruments.xml"), "instrument_names");
+        String[] list = InstrumentCatalogGenerator.readArray(
+            new File(res, "values/other.xml"), "instrument_list");
+        FileInputStream in = new FileInputStream(out);
+        try {
+            InstrumentTable table = InstrumentCatalog.read(in, InstrumentCatalog.sourceHash(names, list));
+            assertEquals(list.length, table.list().size());
+            assertEquals("Choir Aahs", table.instrumentForCode(53).getName());
+        } finally {
+            in.close();
+        }
+    }
+
+}
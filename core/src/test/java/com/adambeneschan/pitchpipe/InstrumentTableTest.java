@@ -0,0 +1,44 @@
+package com.adambeneschan.pitchpipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class InstrumentTableTest {
+
+    private static final String[] sNAMES = {
+        "1;Acoustic Grand Piano", "20;Church Organ", "53;Choir Aahs", null, "bad" };
+    private static final String[] sLIST = {
+        "20;none", "1;3000", "53;none", "99;1000", null, "x;1" };
+
+    @Test
+    public void parsesInListOrder() {
+        List<MidiInstrument> list = InstrumentTable.parse(sNAMES, sLIST).list();
+        assertEquals(4, list.size());
+        assertEquals(20, list.get(0).getCode());
+        assertEquals("Church Organ", list.get(0).getName());
+        assertEquals(Integer.MAX_VALUE, list.get(0).getFade());
+        assertEquals(1, list.get(1).getCode());
+        assertEquals(3000, list.get(1).getFade());
+    }
+
+    @Test
+    public void unnamedInstrumentGetsProgramName() {
+        InstrumentTable table = InstrumentTable.parse(sNAMES, sLIST);
+        assertEquals("Program 99", table.instrumentForCode(99).getName());
+    }
+
+    @Test
+    public void looksUpByCode() {
+        InstrumentTable table = InstrumentTable.parse(sNAMES, sLIST);
+        assertEquals("Choir Aahs", table.instrumentForCode(53).getName());
+        assertNull(table.instrumentForCode(2));
+        assertNull(table.instrumentForCode(-1));
+        assertNull(table.instrumentForCode(0));
+        assertNull(table.instrumentForCode(129));
+    }
+
+}
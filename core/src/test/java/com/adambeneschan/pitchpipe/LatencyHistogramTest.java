@@ -0,0 +1,42 @@
+package com.adambeneschan.pitchpipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getPercentile(99));
+        assertEquals(0, h.getMean());
+    }
+
+    @Test
+    public void percentilesWithinBucketError() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++)
+            h.record(ms * 1000000L);
+        assertEquals(100, h.getCount());
+        assertEquals(100000, h.getMax());
+        assertEquals(50500, h.getMean());
+        long p50 = h.getPercentile(50);
+        assertTrue("p50 " + p50, p50 >= 50000 && p50 <= 50000 * 1.125);
+        long p99 = h.getPercentile(99);
+        assertTrue("p99 " + p99, p99 >= 99000 && p99 <= 100000);
+        assertEquals(100000, h.getPercentile(100));
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(5000);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+    }
+
+}
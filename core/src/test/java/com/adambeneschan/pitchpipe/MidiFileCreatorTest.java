@@ -0,0 +1,210 @@
+package com.adambeneschan.pitchpipe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MidiFileCreatorTest {
+
+    private static Chord chord(int delay, int... notes) {
+        return new Chord(notes, 53, 500, delay);
+    }
+
+    private static byte[] bytes(int... ints) {
+        byte[] b = new byte[ints.length];
+        for (int i = 0; i < ints.length; i++)
+            b[i] = (byte) ints[i];
+        return b;
+    }
+
+    // With the default resolution and tempo, one tick is one millisecond
+    private static final byte[] sHEADER = bytes(
+        0x4D, 0x54, 0x68, 0x64, 0, 0, 0, 6, 0, 0, 0, 1, 0x03, 0xC0,
+        0x4D, 0x54, 0x72, 0x6B);
+    private static final byte[] sMETA = bytes(
+        0x00, 0xFF, 0x51, 0x03, 0x0E, 0xA6, 0x00,
+        0x00, 0xFF, 0x59, 0x02, 0x00, 0x00,
+        0x00, 0xFF, 0x58, 0x04, 0x04, 0x02, 0x30, 0x08);
+
+    private static byte[] file(byte[] events) {
+        byte[] footer = bytes(0x01, 0xFF, 0x2F, 0x00);
+        int trackLength = sMETA.length + events.length + footer.length;
+        MidiEventBuffer buf = new MidiEventBuffer();
+        buf.put(sHEADER);
+        buf.putInt(trackLength);
+        buf.put(sMETA);
+        buf.put(events);
+        buf.put(footer);
+        return buf.toByteArray();
+    }
+
+    @Test
+    public void encodesChord() {
+        byte[] expected = file(bytes(
+            0x00, 0xC0, 52,            // program change to instrument 53
+            0x00, 0x90, 60, 127,
+            0x00, 0x90, 64, 127,
+            0x83, 0x74, 0x80, 60, 0,   // 500 ticks later
+            0x00, 0x80, 64, 0));
+        assertArrayEquals(expected, MidiFileCreator.encode(chord(0, 60, 64)));
+    }
+
+    @Test
+    public void encodesRolledChord() {
+        byte[] expected = file(bytes(
+            0x00, 0xC0, 52,
+            0x00, 0x90, 60, 127,
+            0x82, 0x2C, 0x90, 64, 127, // 300 ticks later
+            0x83, 0x74, 0x80, 60, 0,
+            0x00, 0x80, 64, 0));
+        assertArrayEquals(expected, MidiFileCreator.encode(chord(300, 60, 64)));
+    }
+
+    @Test
+    public void streamAndFileMatchEncode() throws IOException {
+        Chord c = chord(300, 60, 64, 67, 72);
+        byte[] expected = MidiFileCreator.encode(c);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MidiFileCreator.create(out, c);
+        assertArrayEquals(expected, out.toByteArray());
+
+        File f = File.createTempFile("test", ".mid");
+        try {
+            MidiFileCreator.create(f, c);
+            byte[] read = new byte[(int) f.length()];
+            FileInputStream in = new FileInputStream(f);
+            try {
+                assertEquals(read.length, in.read(read));
+            } finally {
+                in.close();
+            }
+            assertArrayEquals(expected, read);
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void reusedBufferGivesSameResult() {
+        MidiEventBuffer buf = new MidiEventBuffer();
+        MidiFileCreator.encode(chord(0, 48, 55, 64, 72, 76), buf);
+        MidiFileCreator.encode(chord(0, 60, 64), buf);
+        assertArrayEquals(MidiFileCreator.encode(chord(0, 60, 64)), buf.toByteArray());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadResolution() {
+        MidiFileCreator.encode(chord(0, 60), new MidiEventBuffer(), 0x8000, MidiFileCreator.DEFAULT_TEMPO);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyParts() {
+        Chord[] parts = new Chord[MidiFileCreator.MAX_PARTS + 1];
+        Arrays.fill(parts, chord(0, 60));
+        MidiFileCreator.encodeParts(parts);
+    }
+
+    private static byte[] formatHeader(int format, int tracks) {
+        return bytes(0x4D, 0x54, 0x68, 0x64, 0, 0, 0, 6, 0, format, 0, tracks, 0x03, 0xC0);
+    }
+
+    // An "MTrk" chunk holding some events and the end of the track
+    private static byte[] chunk(byte[]... events) {
+        MidiEventBuffer body = new MidiEventBuffer();
+        for (byte[] e : events)
+            body.put(e);
+        body.put(bytes(0x00, 0xFF, 0x2F, 0x00));
+        MidiEventBuffer buf = new MidiEventBuffer();
+        buf.put(bytes(0x4D, 0x54, 0x72, 0x6B));
+        buf.putInt(body.length());
+        buf.put(body.toByteArray());
+        return buf.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        MidiEventBuffer buf = new MidiEventBuffer();
+        for (byte[] p : parts)
+            buf.put(p);
+        return buf.toByteArray();
+    }
+
+    // The events of chord(0, note) on a channel
+    private static byte[] partEvents(int channel, int note) {
+        return bytes(
+            0x00, 0xC0 | channel, 52,
+            0x00, 0x90 | channel, note, 127,
+            0x83, 0x74, 0x80 | channel, note, 0);
+    }
+
+    private static byte[] encodeParts(boolean merged, Chord... parts) {
+        MidiEventBuffer buf = new MidiEventBuffer();
+        MidiFileCreator.encodeParts(parts, buf, MidiFileCreator.DEFAULT_PPQ,
+                                    MidiFileCreator.DEFAULT_TEMPO, merged);
+        return buf.toByteArray();
+    }
+
+    @Test
+    public void encodesPartsAsFormat1() {
+        byte[] expected = concat(
+            formatHeader(1, 3),
+            chunk(sMETA),                        // tempo track
+            chunk(partEvents(0, 60)),
+            chunk(partEvents(1, 48)));
+        assertArrayEquals(expected, encodeParts(false, chord(0, 60), chord(0, 48)));
+        assertArrayEquals(expected, MidiFileCreator.encodeParts(new Chord[] { chord(0, 60), chord(0, 48) }));
+    }
+
+    @Test
+    public void partsSkipPercussionChannel() {
+        Chord[] parts = new Chord[11];
+        Arrays.fill(parts, chord(0, 60));
+        int[] channels = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 10, 11 };
+        byte[][] pieces = new byte[2 + parts.length][];
+        pieces[0] = formatHeader(1, parts.length + 1);
+        pieces[1] = chunk(sMETA);
+        for (int i = 0; i < parts.length; i++) {
+            assertEquals(channels[i], MidiFileCreator.partChannel(i));
+            pieces[2 + i] = chunk(partEvents(channels[i], 60));
+        }
+        assertArrayEquals(concat(pieces), encodeParts(false, parts));
+    }
+
+    @Test
+    public void mergesPartsInTimeOrder() {
+        // At the same time, the first part's events come first
+        byte[] expected = concat(
+            formatHeader(0, 1),
+            chunk(sMETA, bytes(
+                0x00, 0xC0, 52,
+                0x00, 0x90, 60, 127,
+                0x00, 0xC1, 52,
+                0x00, 0x91, 48, 127,
+                0x82, 0x2C, 0x90, 64, 127,   // 300 ticks
+                0x81, 0x48, 0x81, 48, 0,     // 500
+                0x82, 0x2C, 0x80, 60, 0,     // 800
+                0x00, 0x80, 64, 0)));
+        assertArrayEquals(expected, encodeParts(true, chord(300, 60, 64), chord(0, 48)));
+    }
+
+    @Test
+    public void encodesVariableLengthQuantities() {
+        int[] values = { 0, 0x7F, 0x80, 0x3FFF, 0x4000, 0x0FFFFFFF };
+        byte[][] expected = {
+            bytes(0x00), bytes(0x7F), bytes(0x81, 0x00), bytes(0xFF, 0x7F),
+            bytes(0x81, 0x80, 0x00), bytes(0xFF, 0xFF, 0xFF, 0x7F) };
+        for (int i = 0; i < values.length; i++) {
+            MidiEventBuffer buf = new MidiEventBuffer();
+            buf.putVarLen(values[i]);
+            assertArrayEquals("value " + values[i], expected[i], buf.toByteArray());
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.adambeneschan.pitchpipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class SetlistTest {
+
+    private static Setlist threeSongs() {
+        Setlist list = new Setlist();
+        list.add(new Setlist.Entry("Ave Maria", new Chord(new int[] { 48, 55, 64 }, 53, 5000, 300)));
+        list.add(new Setlist.Entry("Shenandoah", new Chord(new int[] { 50 }, 20, 3000, 0)));
+        list.add(new Setlist.Entry("Sure on\tthis shining night", new Chord(new int[] { 53, 60, 65, 69 }, 1, 3000, 300)));
+        return list;
+    }
+
+    @Test
+    public void stepsThroughInOrder() {
+        Setlist list = threeSongs();
+        assertNull(list.current());
+        assertSame(list.get(0), list.peekNext());
+        assertSame(list.get(0), list.next());
+        assertSame(list.get(1), list.peekNext());
+        assertSame(list.get(1), list.next());
+        assertSame(list.get(2), list.next());
+        assertNull(list.peekNext());
+        assertNull(list.next());
+        assertSame(list.get(2), list.current());
+        assertSame(list.get(1), list.previous());
+        list.rewind();
+        assertSame(list.get(0), list.next());
+        assertNull(list.previous());
+    }
+
+    @Test
+    public void removingPlayedEntryKeepsNext() {
+        Setlist list = threeSongs();
+        list.next();
+        list.next();
+        Setlist.Entry upcoming = list.peekNext();
+        list.remove(0);
+        assertSame(upcoming, list.peekNext());
+    }
+
+    @Test
+    public void roundTripsAsText() throws IOException {
+        Setlist list = threeSongs();
+        StringWriter w = new StringWriter();
+        list.write(w);
+        Setlist copy = Setlist.read(new StringReader(w.toString() + "\n"));
+        assertEquals(3, copy.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(list.get(i).getName(), copy.get(i).getName());
+            assertEquals(list.get(i).getChord(), copy.get(i).getChord());
+        }
+        assertEquals("Sure on this shining night", copy.get(2).getName());
+        assertEquals(-1, copy.getPosition());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBadNote() throws IOException {
+        Setlist.read(new StringReader("53\t5000\t0\t60,200\tToo high\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMissingField() throws IOException {
+        Setlist.read(new StringReader("53\t5000\t0\n"));
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.adambeneschan.pitchpipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class VoiceMixerTest {
+
+    // One frame per millisecond keeps the arithmetic simple
+    private static final int sRATE = 1000;
+
+    private static final Chord sTWO = new Chord(new int[] { 60, 64 }, 1, 100, 0);
+    private static final Chord sTHREE = new Chord(new int[] { 60, 64, 67 }, 1, 100, 0);
+
+    private final CommandRing mRing = new CommandRing(16);
+    private final VoiceMixer mMixer = new VoiceMixer(sRATE, 8, Timbre.forInstrument(1, Integer.MAX_VALUE));
+    private final float[] mMix = new float[sRATE];
+
+    private void send(int type, int arg1, Object obj) {
+        assertTrue(mRing.offer(type, arg1, 0, obj));
+        mMixer.drain(mRing);
+    }
+
+    private void renderUntilSilent() {
+        for (int i = 0; i < 60 && mMixer.isActive(); i++)
+            mMixer.render(mMix, mMix.length);
+        assertFalse(mMixer.isActive());
+    }
+
+    @Test
+    public void addsOneVoiceToHeldChord() {
+        send(VoiceMixer.CMD_PLAY, 1, sTWO);
+        mMixer.render(mMix, 50);
+        send(VoiceMixer.CMD_ADD_NOTE, 2, sTHREE);
+        assertEquals(3, mMixer.getActiveCount());
+        assertEquals(2, mMixer.getGeneration());
+    }
+
+    @Test
+    public void heldNotesAreReleasedWithAddedNote() {
+        send(VoiceMixer.CMD_PLAY, 1, sTWO);
+        mMixer.render(mMix, 80);
+        send(VoiceMixer.CMD_ADD_NOTE, 2, sTHREE);
+        mMixer.render(mMix, 50);   // past the first chord's release time
+        assertTrue(mMixer.isHeld());
+        mMixer.render(mMix, 60);
+        assertFalse(mMixer.isHeld());
+    }
+
+    @Test
+    public void addAfterChordDiedAwayPlaysWholeChord() {
+        // The render thread went idle before the command arrived
+        send(VoiceMixer.CMD_PLAY, 1, sTWO);
+        renderUntilSilent();
+        send(VoiceMixer.CMD_ADD_NOTE, 2, sTHREE);
+        assertEquals(3, mMixer.getActiveCount());
+        assertEquals(2, mMixer.getGeneration());
+    }
+
+    @Test
+    public void addDuringReleasePlaysWholeChord() {
+        send(VoiceMixer.CMD_PLAY, 1, sTWO);
+        mMixer.render(mMix, 50);
+        send(VoiceMixer.CMD_STOP, 0, null);
+        assertTrue(mMixer.isActive());
+        assertFalse(mMixer.isHeld());
+        send(VoiceMixer.CMD_ADD_NOTE, 2, sTHREE);
+        assertEquals(2 + 3, mMixer.getActiveCount());   // the release tails go on
+        assertTrue(mMixer.isHeld());
+        assertEquals(2, mMixer.getGeneration());
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.adambeneschan.pitchpipe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WavRendererTest {
+
+    private static final int sRATE = 22050;
+    private static final ForkJoinPool sPool = new ForkJoinPool(4);
+
+    private static final Chord sCHORD = new Chord(new int[] { 48, 55, 64, 72 }, 53, 400, 100);
+    private static final Chord sNOTE = new Chord(new int[] { 60 }, 1, 300, 0);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @AfterClass
+    public static void shutDown() {
+        sPool.shutdown();
+    }
+
+    private static ByteBuffer readAll(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static String tag(ByteBuffer b, int at) {
+        return new String(new char[] {
+            (char) b.get(at), (char) b.get(at + 1), (char) b.get(at + 2), (char) b.get(at + 3) });
+    }
+
+    @Test
+    public void writesHeaderWithSizes() throws IOException {
+        File f = mFolder.newFile("cues.wav");
+        WavRenderer.Result result = new WavRenderer(sRATE, 24, null, sPool)
+            .render(Arrays.asList(sCHORD, sNOTE), 250, f);
+        ByteBuffer b = readAll(f);
+        assertEquals(f.length(), result.getBytes());
+        assertEquals(44 + 3 * result.getFrames(), f.length());
+        assertEquals("RIFF", tag(b, 0));
+        assertEquals(f.length() - 8, b.getInt(4));
+        assertEquals("WAVE", tag(b, 8));
+        assertEquals("fmt ", tag(b, 12));
+        assertEquals(1, b.getShort(20));
+        assertEquals(1, b.getShort(22));
+        assertEquals(sRATE, b.getInt(24));
+        assertEquals(3 * sRATE, b.getInt(28));
+        assertEquals(3, b.getShort(32));
+        assertEquals(24, b.getShort(34));
+        assertEquals("data", tag(b, 36));
+        assertEquals(f.length() - 44, b.getInt(40));
+        assertTrue(result.getRealtimeFactor() > 0);
+    }
+
+    @Test
+    public void soundsLikeChordRenderer() throws IOException {
+        File f = mFolder.newFile("chord.wav");
+        List<Chord> chords = Arrays.asList(sCHORD);
+        new WavRenderer(sRATE, 16, null, sPool).render(chords, 0, f);
+        ByteBuffer b = readAll(f);
+        short[] expected = ChordRenderer.render(sCHORD, Integer.MAX_VALUE, sRATE);
+        short[] actual = new short[(b.limit() - 44) / 2];
+        b.position(44);
+        b.asShortBuffer().get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void rewritingReplacesFile() throws IOException {
+        File f = mFolder.newFile("again.wav");
+        WavRenderer r = new WavRenderer(sRATE, 16, null, sPool);
+        r.render(Arrays.asList(sCHORD, sCHORD, sCHORD), 500, f);
+        WavRenderer.Result result = r.render(Arrays.asList(sNOTE), 500, f);
+        assertEquals(44 + 2 * result.getFrames(), f.length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEightBit() {
+        new WavRenderer(sRATE, 8, null, sPool);
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.adambeneschan.pitchpipe;
+
+import java.util.concurrent.locks.LockSupport;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * A single long-lived audio render thread that mixes voices with a
+ * {@link VoiceMixer} and writes them to an {@code AudioTrack}.  Other
+ * threads control it only by sending commands through a lock-free
+ * {@link CommandRing}, so sending a command never blocks, and the render
+ * loop never takes a lock or allocates.  When nothing is sounding, the
+ * render thread stops the track, letting what it has buffered play out,
+ * and parks until the next command arrives.  Commands must all be sent
+ * from one thread (normally the UI thread).  There should be only one
+ * instance of this class in an app.
+ * @author Adam Beneschan
+ */
+public class AudioEngine implements Runnable {
+
+    /**
+     * Interface definition for a callback invoked on the main thread
+     * when everything has stopped sounding.
+     */
+    public interface IdleListener {
+        /**
+         * Called when the last voice has died away.  This runs on the
+         * main thread, shortly after the render thread has gone idle, so
+         * a newer chord may already have been sent.
+         * @param generation The generation number of the last chord played
+         * (see {@link VoiceMixer#CMD_PLAY}).
+         */
+        public void onIdle(int generation);
+    }
+
+    private static final int sRING_SIZE = 256;
+    private static final int sMAX_VOICES = 24;
+
+    private static final String TAG = "AudioEngine";
+
+    private static AudioEngine sEngine = null;
+
+    private final CommandRing mRing = new CommandRing(sRING_SIZE);
+    private volatile Thread mThread = null;   // the render thread
+    private volatile IdleListener mIdleListener = null;
+
+    // The render thread must not block, so it only posts mNotifyIdle to
+    // the main thread, which calls the listener; posting a Runnable that
+    // already exists doesn't allocate.  If the engine goes idle twice
+    // before it runs, only the later generation is reported.
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private volatile int mIdleGeneration = 0;
+    private final Runnable mNotifyIdle = new Runnable() {
+        @Override
+        public void run() {
+            IdleListener l = mIdleListener;
+            if (l != null)
+                l.onIdle(mIdleGeneration);
+        }
+    };
+
+    private AudioEngine() { }
+
+    /**
+     * Returns the single instance of this class.
+     * @return The single instance of this class.
+     */
+    public static synchronized AudioEngine getInstance() {
+        if (sEngine == null) {
+            sEngine = new AudioEngine();
+        }
+        return sEngine;
+    }
+
+    /**
+     * Starts the render thread, if it isn't already running.  The thread
+     * runs for the life of the process, unless it fails, in which case
+     * the next command starts a new one.
+     */
+    public synchronized void start() {
+        if (mThread == null) {
+            mThread = new Thread(this, "AudioEngine");
+            mThread.start();
+        }
+    }
+
+    /**
+     * Registers a listener to be called when everything stops sounding.
+     * @param l The listener, or {@code null}.
+     */
+    public void setIdleListener(IdleListener l) {
+        mIdleListener = l;
+    }
+
+    /**
+     * Sends a command to the render thread (see the {@code CMD_}
+     * constants in {@link VoiceMixer}).  Starts the render thread if
+     * necessary.
+     * @param type The command type.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @param obj The object argument, or {@code null}.
+     * @return {@code true} if the command was queued, {@code false} if the
+     * queue was full and the command was dropped.
+     */
+    public boolean send(int type, int arg1, int arg2, Object obj) {
+        // Queue first, so that if the render thread has just failed, the
+        // one started here finds the command
+        boolean queued = mRing.offer(type, arg1, arg2, obj);
+        Thread t = mThread;
+        if (t == null) {
+            start();
+            t = mThread;
+        }
+        LockSupport.unpark(t);
+        return queued;
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        int rate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+        int minBytes = AudioTrack.getMinBufferSize(rate, AudioFormat.CHANNEL_OUT_MONO,
+                                                   AudioFormat.ENCODING_PCM_16BIT);
+        int frames = Math.max(minBytes / 2, 256);
+        float[] mix = new float[frames];
+        short[] pcm = new short[frames];
+        VoiceMixer mixer = new VoiceMixer(rate, sMAX_VOICES,
+                                          Timbre.forInstrument(PitchPipeData.getInstance().getInstrument(),
+                                                               Integer.MAX_VALUE));
+        AudioTrack track = null;
+        try {
+            track = new AudioTrack(AudioManager.STREAM_MUSIC, rate, AudioFormat.CHANNEL_OUT_MONO,
+                                   AudioFormat.ENCODING_PCM_16BIT, frames * 2, AudioTrack.MODE_STREAM);
+            boolean sounding = false;
+            while (true) {
+                mixer.drain(mRing);
+                if (!mixer.isActive()) {
+                    if (sounding) {
+                        sounding = false;
+                        // stop() rather than pause() and flush(), so that
+                        // the end of the release tail still in the
+                        // track's buffer is played out, not cut off
+                        track.stop();
+                        mIdleGeneration = mixer.getGeneration();
+                        mHandler.post(mNotifyIdle);
+                    }
+                    // Nothing to play; wait for the next command.  A
+                    // command sent before we park makes park return at once.
+                    if (mRing.isEmpty())
+                        LockSupport.park(this);
+                    continue;
+                }
+                if (!sounding) {
+                    sounding = true;
+                    track.play();
+                }
+                mixer.render(mix, frames);
+                ChordRenderer.toPcm16(mix, 0, pcm, 0, frames);
+                track.write(pcm, 0, frames);   // paces the loop to the output
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Exception in audio render thread", e);
+        } finally {
+            if (track != null) {
+                // Failed: whatever is still buffered is thrown away
+                if (track.getState() == AudioTrack.STATE_INITIALIZED) {
+                    track.pause();
+                    track.flush();
+                }
+                track.release();
+            }
+            // Let the next command start a new render thread.  This thread
+            // takes nothing more from the ring, so the ring still has only
+            // one consumer.
+            synchronized (this) {
+                if (mThread == Thread.currentThread())
+                    mThread = null;
+            }
+        }
+    }
+
+}
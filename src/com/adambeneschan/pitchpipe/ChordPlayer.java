@@ -1,23 +1,101 @@
 package com.adambeneschan.pitchpipe;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-import android.app.Fragment;
+import android.media.AudioFormat;
 import android.media.AudioManager;
+import android.media.AudioTrack;
 import android.media.MediaPlayer;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
- * Class to play chords using MIDI files.  There should be only one
- * instance of this class in an app.
+ * Class to play chords, with one of three engines (see {@link Engine}).
+ * There should be only one instance of this class in an app.
+ * <p>
+ * The {@link Engine#MIDI MIDI} engine creates a MIDI file for each chord
+ * and plays it with a {@code MediaPlayer}.  On devices that support it,
+ * the MIDI data is given to the {@code MediaPlayer} straight from memory;
+ * otherwise it is written to a temporary file in the cache directory.
+ * The {@link Engine#PCM PCM} engine renders the chord with
+ * {@link ChordRenderer} and plays it with an {@code AudioTrack}, which
+ * avoids the {@code MediaPlayer}'s prepare time.  With both, chords are
+ * played one at a time by a single playback thread that takes requests
+ * from a queue; when requests come in quick bursts, only the latest is
+ * played, and the others are dropped before any work is done for them.
+ * The {@link Engine#LIVE LIVE} engine hands the chord to the long-lived
+ * {@link AudioEngine}, which costs the caller a single enqueue.
+ * <p>
+ * Each play has a generation number, and the player's state (idle,
+ * preparing, playing or stopping) only changes by compare-and-set
+ * against the current generation, so nothing done on behalf of an old
+ * play can affect a newer one.
  * @author Adam Beneschan
  */
-public class ChordPlayer {
+public class ChordPlayer implements ChordSink {
 
-    private Play mPlayThread = null;
-    private int mFileCounter = 0;
-    private Fragment mFragment = null;
-    private boolean mPlaying = false;
+    /**
+     * The way chords are turned into sound.
+     */
+    public enum Engine {
+        /**
+         * Create a MIDI file and play it with the platform's MIDI
+         * synthesizer, through {@code MediaPlayer}.
+         */
+        MIDI,
+        /**
+         * Render samples with {@link ChordRenderer} and play them through
+         * {@code AudioTrack}.
+         */
+        PCM,
+        /**
+         * Send the chord to the {@link AudioEngine}'s render thread, which
+         * mixes voices continuously.
+         */
+        LIVE
+    }
+
+    /** The default coalescing window, in milliseconds (see {@link #setCoalesceWindow}). */
+    public static final int DEFAULT_COALESCE_WINDOW = 40;
+
+    // The playback thread runs Plays taken from mQueue, one at a time
+    private final LinkedBlockingQueue<Play> mQueue = new LinkedBlockingQueue<Play>();
+    private Thread mExecutor = null;
+    private volatile Play mCurrent = null;   // the play being run, if any
+    private long mLastRequest = 0;
+    private int mCoalesceWindow = DEFAULT_COALESCE_WINDOW;
+    private final AtomicInteger mFileCounter = new AtomicInteger(0);
+    private volatile File mCacheDir = null;
+    private boolean mInMemory = true;
+    private Engine mEngine = Engine.MIDI;
+    
+    // Playback states.  The state is packed into mStatus together with
+    // the generation number of the play it belongs to; every play gets a
+    // new generation number, so a transition made on behalf of an older
+    // play (e.g. a late completion) fails once a newer play has begun.
+    private static final int sIDLE = 0;
+    private static final int sPREPARING = 1;
+    private static final int sPLAYING = 2;
+    private static final int sSTOPPING = 3;
+
+    private final AtomicLong mStatus = new AtomicLong(status(0, sIDLE));
+    private final AtomicInteger mGenerations = new AtomicInteger(0);
+    
+    // State used with Engine.LIVE
+    private final AtomicReference<PlayStoppedListener> mLiveListener =
+        new AtomicReference<PlayStoppedListener>(null);
+    private int mLiveInstrument = -1;
+    private int mLiveFade = -1;
+    private Chord mLiveChord = null;   // the chord last sent to the engine
     
     private static ChordPlayer sPlayer = null;
 
@@ -29,7 +107,7 @@ public class ChordPlayer {
      * Returns the single instance of this class.
      * @return The single instance of this class.
      */
-    public static ChordPlayer getInstance() {
+    public static synchronized ChordPlayer getInstance() {
         if (sPlayer == null) {
             sPlayer = new ChordPlayer();
         }        
@@ -37,11 +115,81 @@ public class ChordPlayer {
     }
     
     /**
-     * Specifies the {@code Fragment} that is using this {@code ChordPlayer}.
-     * @param f The fragment.
+     * Specifies the directory in which temporary MIDI files are created,
+     * normally the app's cache directory.  Nothing is played until this
+     * has been called.
+     * @param dir The directory.
+     */
+    public void setCacheDir(File dir) {
+        mCacheDir = dir;
+    }
+
+    /**
+     * Sets the coalescing window.  A chord requested less than this long
+     * after the previous request is held for the rest of the window before
+     * it is played; if another chord is requested meanwhile, the held one
+     * is dropped (its listener is called with
+     * {@link PlayStoppedListener.Reason#NEW_PLAY}) without being encoded or
+     * prepared.  The first chord of a burst is played at once.
+     * @param window The window in milliseconds; 0 plays every request.
+     */
+    public void setCoalesceWindow(int window) {
+        mCoalesceWindow = Math.max(0, window);
+    }
+
+    /**
+     * Specifies whether MIDI data should be played from memory instead of
+     * from a temporary file.  The default is {@code true}.  This has no
+     * effect on devices that do not support in-memory data sources; they
+     * always use a file.
+     * @param inMemory {@code true} to play from memory if possible.
+     */
+    public void setInMemory(boolean inMemory) {
+        mInMemory = inMemory;
+    }
+
+    /**
+     * Tests whether MIDI data will be played from memory.
+     * @return {@code true} if chords are played without a temporary file.
+     */
+    public boolean isInMemory() {
+        return mInMemory && MidiDataSource.isSupported();
+    }
+
+    /**
+     * Selects the way chords are turned into sound.  The default is
+     * {@link Engine#MIDI}.  Chords that are already playing are not
+     * affected.  Multi-part chords ({@link #playParts}) always use MIDI.
+     * @param engine The engine to use for chords played from now on.
+     */
+    public void setEngine(Engine engine) {
+        mEngine = engine;
+    }
+
+    /**
+     * Returns the way chords are turned into sound.
+     * @return The engine used for new chords.
+     */
+    public Engine getEngine() {
+        return mEngine;
+    }
+
+    /**
+     * Prepares to play chords with an instrument.  With the PCM engine,
+     * starts rendering the instrument's notes into the
+     * {@link NoteSampleCache} in the background, so that later chords only
+     * need to be mixed.  With the live engine, starts its render thread.
+     * Does nothing with the MIDI engine.
+     * @param instrument The MIDI instrument code.
+     * @param lowNote The lowest note that is likely to be played.
+     * @param highNote The highest note that is likely to be played.
      */
-    public void setFragment(Fragment f) {
-        mFragment = f;
+    public void warmUp(int instrument, int lowNote, int highNote) {
+        if (mEngine == Engine.PCM) {
+            NoteSampleCache.getInstance().warmInBackground(instrument, fadeFor(instrument), lowNote, highNote);
+        } else if (mEngine == Engine.LIVE) {
+            AudioEngine.getInstance().start();
+        }
     }
 
     /**
@@ -53,21 +201,400 @@ public class ChordPlayer {
      * stopped.
      */
     public void play(Chord chord, PlayStoppedListener l) {
-        mPlaying = true;
-        if (mPlayThread != null)  {
-            mPlayThread.stopPlaying(true);
+        long requested = requested();
+        if (mEngine == Engine.LIVE)
+            playLive(chord, l, requested);
+        else
+            startPlay(new Play(chord, null, l, requested));
+    }
+
+    /**
+     * Starts playing several parts at once, e.g. soprano, alto, tenor and
+     * bass, each on its own MIDI channel with its own instrument.  All the
+     * parts are put in one multi-track MIDI file, so only one
+     * {@code MediaPlayer} is needed.  If another chord is already playing,
+     * stops the play of that chord and starts the new one.
+     * @param parts The chords to be played, one per part (at most
+     * {@link MidiFileCreator#MAX_PARTS}).
+     * @param l If non-null, called back when the play of these chords has
+     * stopped.
+     */
+    public void playParts(Chord[] parts, PlayStoppedListener l) {
+        startPlay(new Play(null, parts.clone(), l, requested()));
+    }
+
+    /**
+     * Plays a chord that is the chord now playing with one note added at
+     * the end.  With the live engine, if the previous chord is still
+     * sounding, only the new note is started; the notes already sounding
+     * keep going and are held as long as the new note.  Otherwise, this is
+     * the same as {@link #play}.
+     * @param chord The whole chord, including the added note.
+     * @param l If non-null, called back when the play of this chord has
+     * stopped.
+     */
+    public void playAdded(Chord chord, PlayStoppedListener l) {
+        long s = mStatus.get();
+        if (!(mEngine == Engine.LIVE && stateOf(s) == sPLAYING && extendsLiveChord(chord))) {
+            play(chord, l);
+            return;
+        }
+        long requested = requested();
+
+        // Claim the play for a new generation.  If the engine has already
+        // gone idle, the chord has finished and is played again whole;
+        // once the claim is made, an idle report for the old generation
+        // is ignored, and the mixer plays the whole chord if it finds
+        // nothing held when the command arrives.
+        int oldGeneration = generationOf(s);
+        int generation = mGenerations.incrementAndGet();
+        if (!mStatus.compareAndSet(s, status(generation, sPLAYING))) {
+            playLive(chord, l, requested);
+            return;
+        }
+        TraceRecorder.getInstance().playBegin("play", generation);
+        mLiveChord = chord;
+        PlayStoppedListener old = mLiveListener.getAndSet(l);
+        if (!AudioEngine.getInstance().send(VoiceMixer.CMD_ADD_NOTE, generation, 0, chord)) {
+            // Nothing was queued for the new generation, so the render
+            // thread can't have touched the listener
+            mLiveListener.set(old);
+            playLive(chord, l, requested);   // replay the whole chord
+            return;
         }
-        mPlayThread = new Play(chord, l);
-        mPlayThread.start();
+        PlaybackMetrics.getInstance().record(PlaybackMetrics.Stage.TAP_TO_START, requested);
+        notifyStopped(old != l ? old : null, PlayStoppedListener.Reason.NEW_PLAY, oldGeneration);
+    }
+
+    /**
+     * Tests whether a chord is the chord last sent to the live engine
+     * with one more note.
+     */
+    private boolean extendsLiveChord(Chord chord) {
+        Chord live = mLiveChord;
+        if (live == null
+                || live.getInstrument() != chord.getInstrument()
+                || live.getDelay() != chord.getDelay())
+            return false;
+        return chord.getNoteCount() == live.getNoteCount() + 1 && chord.startsWith(live);
+    }
+
+    /**
+     * Returns the time a play was asked for: the tap that led to it, if
+     * there was one, or else now.  Records the time taken to build the
+     * chord after the tap.
+     */
+    private static long requested() {
+        PlaybackMetrics metrics = PlaybackMetrics.getInstance();
+        long tap = metrics.takeTapTime();
+        if (tap == 0)
+            return System.nanoTime();
+        metrics.record(PlaybackMetrics.Stage.BUILD, tap);
+        return tap;
+    }
+
+    private void startPlay(Play p) {
+        stopLive(PlayStoppedListener.Reason.NEW_PLAY);
+        long now = SystemClock.uptimeMillis();
+        if (now - mLastRequest < mCoalesceWindow)
+            p.mHoldUntil = now + mCoalesceWindow;
+        mLastRequest = now;
+        
+        // The new generation must be set before mCurrent is read; the
+        // playback thread sets mCurrent before it checks the generation, so
+        // one of us will notice that the current play has been superseded.
+        p.mGeneration = begin(sPREPARING);
+        dropQueued(PlayStoppedListener.Reason.NEW_PLAY);
+        Play current = mCurrent;
+        if (current != null)
+            current.stopPlaying(true);
+        mQueue.offer(p);   // only now can the playback thread see it
+        startExecutor();
     }
 
     /**
      * Stops playing the current chord, if it is playing one.
      */
     public void stop() {
-        if (mPlayThread != null)  
-            mPlayThread.stopPlaying(false);
-        mPlaying = false;
+        TraceRecorder trace = TraceRecorder.getInstance();
+        trace.begin("ChordPlayer.stop", 0);
+        long s;
+        do {
+            s = mStatus.get();
+        } while (stateOf(s) != sIDLE
+                 && !mStatus.compareAndSet(s, status(generationOf(s), sSTOPPING)));
+        int generation = generationOf(s);
+        dropQueued(PlayStoppedListener.Reason.STOPPED);
+        stopLive(PlayStoppedListener.Reason.STOPPED);
+        Play current = mCurrent;
+        if (current != null && current.mGeneration == generation)
+            current.stopPlaying(false);   // the playback thread finishes it
+        else
+            finish(generation);   // nothing to wait for
+        trace.end("ChordPlayer.stop", 0);
+    }
+
+    /**
+     * Starts a new play in a given state, superseding the current one.
+     * @return The new play's generation number.
+     */
+    private int begin(int state) {
+        int generation = mGenerations.incrementAndGet();
+        mStatus.set(status(generation, state));
+        TraceRecorder.getInstance().playBegin("play", generation);
+        return generation;
+    }
+
+    /**
+     * Moves a play from one state to another, if it is still the current
+     * play and is in the expected state.
+     */
+    private boolean transition(int generation, int from, int to) {
+        return mStatus.compareAndSet(status(generation, from), status(generation, to));
+    }
+
+    /**
+     * Makes the player idle, if a play is still the current play.
+     * @return {@code true} if the state was changed.
+     */
+    private boolean finish(int generation) {
+        while (true) {
+            long s = mStatus.get();
+            if (generationOf(s) != generation || stateOf(s) == sIDLE)
+                return false;
+            if (mStatus.compareAndSet(s, status(generation, sIDLE)))
+                return true;
+        }
+    }
+
+    /**
+     * Tells a play's listener (if any) that it has stopped, and records
+     * the end of the play in the trace.
+     */
+    private static void notifyStopped(PlayStoppedListener l, PlayStoppedListener.Reason r, int generation) {
+        TraceRecorder trace = TraceRecorder.getInstance();
+        trace.playEnd("play", r.name(), generation);
+        if (l != null) {
+            trace.begin("onPlayStopped", r.name(), generation);
+            l.onPlayStopped(r);
+            trace.end("onPlayStopped", generation);
+        }
+    }
+
+    private static long status(int generation, int state) {
+        return ((long) generation << 2) | state;
+    }
+
+    private static int generationOf(long status) {
+        return (int) (status >>> 2);
+    }
+
+    private static int stateOf(long status) {
+        return (int) status & 3;
+    }
+
+    /**
+     * Removes the plays that are waiting in the queue and tells their
+     * listeners why.
+     */
+    private void dropQueued(PlayStoppedListener.Reason reason) {
+        List<Play> dropped = new ArrayList<Play>();
+        mQueue.drainTo(dropped);
+        for (Play p : dropped)
+            p.callListener(reason);
+    }
+
+    private synchronized void startExecutor() {
+        if (mExecutor != null)
+            return;
+        mExecutor = new Thread("ChordPlayer") {
+            @Override
+            public void run() {
+                while (true) {
+                    Play p;
+                    try {
+                        p = mQueue.take();
+                        long wait = p.mHoldUntil - SystemClock.uptimeMillis();
+                        if (wait > 0)
+                            Thread.sleep(wait);   // let the burst finish
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    mCurrent = p;
+                    long s = mStatus.get();
+                    if (s != status(p.mGeneration, sPREPARING)) {
+                        // Superseded or stopped while waiting
+                        mCurrent = null;
+                        finish(p.mGeneration);
+                        p.callListener(generationOf(s) == p.mGeneration
+                                       ? PlayStoppedListener.Reason.STOPPED
+                                       : PlayStoppedListener.Reason.NEW_PLAY);
+                        continue;
+                    }
+                    TraceRecorder.getInstance().begin("Play.run", p.mGeneration);
+                    p.run();
+                    TraceRecorder.getInstance().end("Play.run", p.mGeneration);
+                    mCurrent = null;
+                    finish(p.mGeneration);   // if it was stopped, it's now torn down
+                }
+            }
+        };
+        mExecutor.start();
+    }
+
+    /**
+     * Plays a chord with the live engine.  Normally this just queues one
+     * command for the render thread; the instrument's timbre is sent
+     * first only when the instrument changes.
+     */
+    private void playLive(Chord chord, PlayStoppedListener l, long requested) {
+        int oldGeneration = generationOf(mStatus.get());
+        boolean wasLive = (mLiveChord != null);
+        int generation = begin(sPLAYING);
+        dropQueued(PlayStoppedListener.Reason.NEW_PLAY);
+        Play current = mCurrent;
+        if (current != null)
+            current.stopPlaying(true);
+        AudioEngine engine = AudioEngine.getInstance();
+        engine.setIdleListener(mIdleListener);
+        int fade = fadeFor(chord.getInstrument());
+        if (chord.getInstrument() != mLiveInstrument || fade != mLiveFade) {
+            engine.send(VoiceMixer.CMD_INSTRUMENT, 0, 0, Timbre.forInstrument(chord.getInstrument(), fade));
+            mLiveInstrument = chord.getInstrument();
+            mLiveFade = fade;
+        }
+        mLiveChord = chord;
+        PlayStoppedListener old = mLiveListener.getAndSet(l);
+        if (!engine.send(VoiceMixer.CMD_PLAY, generation, 0, chord)) {
+            Log.e(TAG, "Audio engine command queue is full");
+            finish(generation);
+            mLiveListener.set(null);
+            notifyStopped(l, PlayStoppedListener.Reason.EXCEPTION, generation);
+        } else {
+            PlaybackMetrics.getInstance().record(PlaybackMetrics.Stage.TAP_TO_START, requested);
+        }
+        if (wasLive)
+            notifyStopped(old, PlayStoppedListener.Reason.NEW_PLAY, oldGeneration);
+    }
+
+    /**
+     * If the live engine is playing a chord, releases it.
+     */
+    private void stopLive(PlayStoppedListener.Reason reason) {
+        PlayStoppedListener old = mLiveListener.getAndSet(null);
+        boolean wasLive = (mLiveChord != null);
+        mLiveChord = null;
+        if (mLiveInstrument >= 0) {
+            AudioEngine.getInstance().send(VoiceMixer.CMD_STOP, 0, 0, null);
+        }
+        if (wasLive)
+            notifyStopped(old, reason, generationOf(mStatus.get()));
+    }
+
+    // Called on the main thread when the live engine falls silent.
+    private final AudioEngine.IdleListener mIdleListener = new AudioEngine.IdleListener() {
+        @Override
+        public void onIdle(int generation) {
+            if (!finish(generation))
+                return;   // a newer chord has been sent, or it was stopped
+            PlayStoppedListener l = mLiveListener.getAndSet(null);
+            notifyStopped(l, PlayStoppedListener.Reason.COMPLETED, generation);
+        }
+    };
+
+    /**
+     * Starts preparing a chord that is likely to be played next.  With the
+     * MIDI engine, the chord is encoded and a {@code MediaPlayer} prepared
+     * for it (see {@link MediaPlayerPool}), so that when it is played it
+     * can start without waiting for either.  With the PCM engine, its
+     * notes are rendered into the {@link NoteSampleCache}, so that playing
+     * it only has to mix them.  The live engine needs nothing prepared.
+     * @param chord The chord.
+     */
+    public void prefetch(final Chord chord) {
+        if (mEngine == Engine.PCM) {
+            NoteSampleCache.getInstance().warmInBackground(chord, fadeFor(chord.getInstrument()));
+            return;
+        }
+        if (mEngine != Engine.MIDI || mCacheDir == null)
+            return;
+        MediaPlayerPool.getInstance().prefetch(chord, new MediaPlayerPool.Loader() {
+            @Override
+            public File load(MediaPlayer player) throws IOException {
+                return loadChord(player, chord, null, false);
+            }
+        });
+    }
+
+    /**
+     * Gives a MediaPlayer the MIDI data for a chord or parts, either in
+     * memory or through a temporary file.
+     * @param requested {@code true} if the chord is being played now, in
+     * which case the time taken to encode it is recorded; {@code false}
+     * if it is being prefetched.
+     * @return The temporary file, or {@code null}.
+     */
+    private File loadChord(MediaPlayer player, Chord chord, Chord[] parts, boolean requested) throws IOException {
+        // Get the MIDI file contents (encoding them if this chord
+        // hasn't been played recently)
+        byte[] data;
+        long start = System.nanoTime();
+        if (parts != null) {
+            data = MidiFileCreator.encodeParts(parts);
+        } else {
+            data = EncodedChordCache.getInstance().get(chord);
+            if (Log.isLoggable(TAG, Log.DEBUG))
+                Log.d(TAG, EncodedChordCache.getInstance().toString());
+        }
+        if (requested)
+            PlaybackMetrics.getInstance().record(PlaybackMetrics.Stage.ENCODE, start);
+        if (isInMemory()) {
+            // Hand the MIDI data to the MediaPlayer directly
+            setMemoryDataSource(player, data);
+            return null;
+        }
+        // Create a temporary file to hold the MIDI file
+        File dir = mCacheDir;
+        if (dir == null)
+            throw new IOException("No cache directory");
+        File f = new File(dir, "pp-mid" + nextFileNumber() + ".mid");
+        writeFile(f, data);
+        player.setDataSource(f.getAbsolutePath());
+        return f;
+    }
+
+    private int nextFileNumber() {
+        return mFileCounter.incrementAndGet();
+    }
+
+    /**
+     * Writes already-encoded MIDI data to a file.
+     */
+    private static void writeFile(File f, byte[] data) throws IOException {
+        FileOutputStream fos = new FileOutputStream(f);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Gives in-memory MIDI data to a MediaPlayer.  This is a separate
+     * method so that MidiDataSource is only touched on devices that
+     * support it.
+     */
+    private static void setMemoryDataSource(MediaPlayer player, byte[] data) {
+        player.setDataSource(new MidiDataSource(data));
+    }
+
+    /**
+     * Returns the fade-out time of an instrument, for the PCM engines.
+     */
+    private static int fadeFor(int instrument) {
+        InstrumentList list = PitchPipeData.getInstance().getInstrumentList();
+        MidiInstrument instr = (list == null) ? null : list.instrumentForCode(instrument);
+        return (instr == null) ? Integer.MAX_VALUE : instr.getFade();
     }
     
     /**
@@ -77,50 +604,77 @@ public class ChordPlayer {
      * still be {@code true} during any small gap between the chords.
      */
     public boolean isPlaying() {
-        return mPlaying;
+        int state = stateOf(mStatus.get());
+        return state == sPREPARING || state == sPLAYING;
     }
     
-    private class Play extends Thread {
+    private class Play {
         
         private Object mPlayDone = new Object();
         private volatile boolean mIsDone = false;
-        private File mMidiFile;
-        private MediaPlayer mPlayer = null;
+        private MediaPlayer mPlayer = null;   // guarded by mPlayDone
+        private boolean mPcm;
         private Chord mChord;
+        private Chord[] mParts;
         private PlayStoppedListener mCallback;
         private PlayStoppedListener.Reason mReason = null;
+        private long mHoldUntil = 0;   // uptime before which not to start
+        private int mGeneration;
+        private final long mRequested;      // nanoTime of the tap or request
+        private long mCompletedAt = 0;      // nanoTime of completion
 
-        public Play(Chord chord, PlayStoppedListener l) {
+        /**
+         * Constructs a Play for either a single chord or several parts;
+         * exactly one of {@code chord} and {@code parts} is non-null.
+         */
+        public Play(Chord chord, Chord[] parts, PlayStoppedListener l, long requested) {
+            mRequested = requested;
             mChord = chord;
+            mParts = parts;
             mCallback = l;
+            mPcm = (mEngine == Engine.PCM && parts == null);
         }
 
-        @Override
+        /**
+         * Plays the chord, returning when it has finished or been stopped.
+         * Runs on the playback thread.
+         */
         public void run() {
-            if (mFragment == null)
+            if (mCacheDir == null)
                 return;
+            if (mPcm) {
+                runPcm();
+                return;
+            }
             
-            // Create a temporary file name to hold the MIDI file
-            mFileCounter++;
-            mMidiFile = new File(mFragment.getActivity().getCacheDir(), "pp-mid" + mFileCounter + ".mid");
-            
+            MediaPlayerPool pool = MediaPlayerPool.getInstance();
+            MediaPlayerPool.PooledPlayer pooled = null;
             try {
-                // Create the MIDI file to play the chord
-                MidiFileCreator.create(mMidiFile, mChord);
-                
-                // Set up the MediaPlayer to play the MIDI file
-                mPlayer = new MediaPlayer();
-                mPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-                mPlayer.setDataSource(mMidiFile.getAbsolutePath());
-                mPlayer.prepare();
-                mPlayer.setLooping(false);
+                // Get a prepared MediaPlayer for the MIDI data, from the
+                // pool if this chord was prefetched
+                Object key = (mParts != null) ? Arrays.asList(mParts) : mChord;
+                TraceRecorder trace = TraceRecorder.getInstance();
+                trace.begin("acquire", mGeneration);
+                pooled = pool.acquire(key, new MediaPlayerPool.Loader() {
+                    @Override
+                    public File load(MediaPlayer player) throws IOException {
+                        return loadChord(player, mChord, mParts, true);
+                    }
+                });
+                trace.end("acquire", mGeneration);
+                if (Log.isLoggable(TAG, Log.DEBUG))
+                    Log.d(TAG, pool.toString());
+                MediaPlayer player = pooled.getPlayer();
+                player.setLooping(false);
                 
                 // Set up listener that runs when MIDI file is done playing.
-                mPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+                player.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
                     @Override
                     public void onCompletion(MediaPlayer mp) {
+                        TraceRecorder.getInstance().instant("onCompletion", null, mGeneration);
                         synchronized(mPlayDone) {
-                            mPlaying = false;
+                            mCompletedAt = System.nanoTime();
+                            finish(mGeneration);
                             mIsDone = true;
                             mReason = PlayStoppedListener.Reason.COMPLETED;
                             mPlayDone.notify();
@@ -128,27 +682,116 @@ public class ChordPlayer {
                     }
                 });
                 
-                // Start the MediaPlayer.
-                mPlayer.start();                
-                
-                // Wait until "done" notification, either by completion
-                // listener or stopPlaying.
+                // Start the MediaPlayer, unless stopPlaying was called
+                // while it was being prepared, then wait until "done"
+                // notification, either by completion listener or
+                // stopPlaying.
                 synchronized(mPlayDone) {
+                    if (!mIsDone && transition(mGeneration, sPREPARING, sPLAYING)) {
+                        mPlayer = player;
+                        long start = System.nanoTime();
+                        trace.instant("start", null, mGeneration);
+                        player.start();
+                        PlaybackMetrics metrics = PlaybackMetrics.getInstance();
+                        metrics.record(PlaybackMetrics.Stage.START, start);
+                        metrics.record(PlaybackMetrics.Stage.TAP_TO_START, mRequested);
+                    } else if (!mIsDone) {
+                        // Superseded without being told; shouldn't happen
+                        mIsDone = true;
+                        mReason = PlayStoppedListener.Reason.NEW_PLAY;
+                    }
                     while (!mIsDone)  // prevent spurious wakeup
                         mPlayDone.wait();
+                    mPlayer = null;   // stopPlaying mustn't touch it now
                 }
                 
-                mPlayer.release();   // Release MediaPlayer resources
-                mPlayer = null;
-                mMidiFile.delete();  // Delete the temporary file
+                pool.recycle(pooled);   // Reset the MediaPlayer for reuse
+                pooled = null;
                 if (mReason == null)
                     mReason = PlayStoppedListener.Reason.EXCEPTION;
                         // this shouldn't happen
                 
                 // Call PlayStoppedListener callback if any
                 callListener(mReason);
+                recordCompletion();
             } catch (Exception e) {
                 Log.e(TAG, "Exception creating/playing MIDI file", e);
+                synchronized(mPlayDone) {
+                    mIsDone = true;
+                    mPlayer = null;
+                }
+                if (pooled != null)
+                    pool.recycle(pooled);
+                callListener(PlayStoppedListener.Reason.EXCEPTION);
+            }
+        }
+
+        /**
+         * Plays the chord by rendering it to PCM and writing the samples
+         * to an AudioTrack as they are produced.  Returns when the chord
+         * has finished or stopPlaying has been called.
+         */
+        private void runPcm() {
+            AudioTrack track = null;
+            try {
+                int rate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+                int minBytes = AudioTrack.getMinBufferSize(rate, AudioFormat.CHANNEL_OUT_MONO,
+                                                           AudioFormat.ENCODING_PCM_16BIT);
+                short[] buf = new short[Math.max(minBytes / 2, 1024)];
+                ChordRenderer renderer = new ChordRenderer(rate, ChordRenderer.DEFAULT_MAX_VOICES);
+                renderer.start(mChord, fadeFor(mChord.getInstrument()), NoteSampleCache.getInstance());
+                
+                track = new AudioTrack(AudioManager.STREAM_MUSIC, rate, AudioFormat.CHANNEL_OUT_MONO,
+                                       AudioFormat.ENCODING_PCM_16BIT, buf.length * 2, AudioTrack.MODE_STREAM);
+                if (!transition(mGeneration, sPREPARING, sPLAYING)) {
+                    // Stopped or superseded while the renderer was being
+                    // set up; don't let any of this chord be heard.
+                    synchronized(mPlayDone) {
+                        if (!mIsDone) {
+                            mIsDone = true;
+                            mReason = PlayStoppedListener.Reason.NEW_PLAY;
+                        }
+                    }
+                    track.release();
+                    track = null;
+                    callListener(mReason);
+                    return;
+                }
+                long start = System.nanoTime();
+                TraceRecorder.getInstance().instant("start", null, mGeneration);
+                track.play();
+                PlaybackMetrics metrics = PlaybackMetrics.getInstance();
+                metrics.record(PlaybackMetrics.Stage.START, start);
+                metrics.record(PlaybackMetrics.Stage.TAP_TO_START, mRequested);
+                
+                // write() blocks while the track's buffer is full, which
+                // keeps the rendering just ahead of the output.
+                int n;
+                while (!mIsDone && (n = renderer.read(buf, 0, buf.length)) > 0)
+                    track.write(buf, 0, n);
+                
+                synchronized(mPlayDone) {
+                    if (!mIsDone) {
+                        mCompletedAt = System.nanoTime();
+                        finish(mGeneration);
+                        mIsDone = true;
+                        mReason = PlayStoppedListener.Reason.COMPLETED;
+                        track.stop();    // plays out what is buffered
+                    } else {
+                        track.pause();   // stopped: discard what is buffered
+                        track.flush();
+                    }
+                }
+                track.release();
+                track = null;
+                if (mReason == null)
+                    mReason = PlayStoppedListener.Reason.EXCEPTION;
+                callListener(mReason);
+                recordCompletion();
+            } catch (Exception e) {
+                Log.e(TAG, "Exception rendering/playing chord", e);
+                if (track != null)
+                    track.release();
                 callListener(PlayStoppedListener.Reason.EXCEPTION);
             }
         }
@@ -159,28 +802,49 @@ public class ChordPlayer {
          * immediately start a new chord play.
          */
         public void stopPlaying(boolean newPlay) {
-            mReason = newPlay ? PlayStoppedListener.Reason.NEW_PLAY
-                              : PlayStoppedListener.Reason.STOPPED;
-            if (mPlayer != null) {
-                try {
-                    mPlayer.stop();
-                    mPlayer.release();
-                    synchronized(mPlayDone) {
-                        mIsDone = true;
-                        mPlayDone.notify();  // wake up run()
+            TraceRecorder trace = TraceRecorder.getInstance();
+            trace.begin("stopPlaying", newPlay ? "NEW_PLAY" : "STOPPED", mGeneration);
+            try {
+                stopPlayer(newPlay);
+            } finally {
+                trace.end("stopPlaying", mGeneration);
+            }
+        }
+
+        private void stopPlayer(boolean newPlay) {
+            // runPcm() notices mIsDone and stops writing to its AudioTrack;
+            // run() doesn't start its MediaPlayer if it hasn't already.
+            synchronized(mPlayDone) {
+                if (mIsDone)
+                    return;
+                mReason = newPlay ? PlayStoppedListener.Reason.NEW_PLAY
+                                  : PlayStoppedListener.Reason.STOPPED;
+                mIsDone = true;
+                if (mPlayer != null) {
+                    try {
+                        mPlayer.stop();   // run() gives it back to the pool
+                    } catch (Exception e) {
+                        Log.e(TAG, "Exception stopping MIDI file", e);
                     }
-                } catch (Exception e) {
-                    Log.e(TAG, "Exception stopping MIDI file", e);
                 }
+                mPlayDone.notify();  // wake up run()
             }
         }
     
+        /**
+         * If the chord played to completion, records how long it took to
+         * clean up and tell the listener.
+         */
+        private void recordCompletion() {
+            if (mReason == PlayStoppedListener.Reason.COMPLETED && mCompletedAt != 0)
+                PlaybackMetrics.getInstance().record(PlaybackMetrics.Stage.COMPLETION, mCompletedAt);
+        }
+
         /**
          * Called when MediaPlayer completes.
          */
         private void callListener(PlayStoppedListener.Reason r) {
-            if (mCallback != null)
-                mCallback.onPlayStopped(r);
+            notifyStopped(mCallback, r, mGeneration);
         }
     }
 
@@ -96,6 +96,7 @@ public class InstrumentActivity extends ListActivity implements OnItemClickListe
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_instrument);
+        ChordBuilder.setSink(ChordPlayer.getInstance());
     
         // The instrument currently selected
         mCurrInstr = PitchPipeData.getInstance().getInstrument();
@@ -184,6 +185,7 @@ public class InstrumentActivity extends ListActivity implements OnItemClickListe
      */
     private void selectInstrument(MidiInstrument instr) {
         PitchPipeData.getInstance().setInstrument(instr.getCode());
+        ChordPlayer.getInstance().warmUp(instr.getCode(), MainFragment.LOWEST_NOTE, MainFragment.HIGHEST_NOTE);
     }
 
     /**
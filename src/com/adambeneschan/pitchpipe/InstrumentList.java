@@ -1,25 +1,20 @@
 package com.adambeneschan.pitchpipe;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.util.Log;
 
 public class InstrumentList {
 
-    private List<MidiInstrument> sInstrList;
-
-    // Pattern used for both instrument_list and instrument_names strings
-    // in resource files.  The pattern is a numeric MIDI program code, 
-    // followed by ";", followed by data.
-    private static final Pattern sInstrPattern = Pattern.compile("^([0-9]+);(.*)$");
+    private static final String TAG = "InstrumentList";
 
+    private InstrumentTable mTable;
 
     /** 
      * Constructor for InstrumentList.
@@ -28,57 +23,52 @@ public class InstrumentList {
     public InstrumentList(Context c) { 
         
         Resources res = c.getResources();
-        Map<Integer,String> names = new HashMap<Integer,String>();
-        
-        // Retrieve instrument names from resource files.  These are 
-        // kept in a map, by program code.  The actual list of instruments
-        // that appear in the menu is in the instrument_list resource; 
-        // codes that appear here but not in the instrument_list will not
-        // be used.
         
-        TypedArray instrNames = res.obtainTypedArray(R.array.instrument_names);
-        for (int i = 0; i < instrNames.length(); i++) {
-            String s = instrNames.getString(i);
-            if (s != null) {
-                Matcher m = sInstrPattern.matcher(s);
-                if (m.find()) {
-                    int code = Integer.valueOf(m.group(1));
-                    names.put(code, m.group(2));
-                }
-            }
-        }
-    
-        // Retrieve the list of instruments, along with other data 
-        // (currently, the approximate fade-out time), and create 
-        // sInstrList from the data (using the name from the map created
-        // above).
+        // Retrieve instrument names from resource files, and the list of
+        // instruments along with other data (currently, the approximate
+        // fade-out time).  The table is normally loaded from the catalog
+        // made from these strings at build time; if there is no catalog,
+        // or the strings aren't the ones it was made from, InstrumentTable
+        // parses them.
         
-        TypedArray instrList = res.obtainTypedArray(R.array.instrument_list);
-        sInstrList = new ArrayList<MidiInstrument>();
-        for (int i = 0; i < instrList.length(); i++) {
-            String s = instrList.getString(i);
-            if (s != null) {
-                Matcher m = sInstrPattern.matcher(s);
-                if (m.find()) {
-                    int code = Integer.valueOf(m.group(1));
-                    String fadeString = m.group(2);
-                    int fade;
-                    if ("none".equals(fadeString)) {
-                        fade = Integer.MAX_VALUE;
-                    } else {
-                        fade = Integer.valueOf(fadeString);
-                    }
-                    String name = names.get(code);
-                    if (name == null) {
-                        // If no name, just use a dummy name.  The
-                        // alternative would be not to add it to sInstrList.
-                        name = "Program " + code;
-                    }
-                    sInstrList.add(new MidiInstrument(code, name, fade));
-                }
+        String[] names = strings(res, R.array.instrument_names);
+        String[] list = strings(res, R.array.instrument_list);
+        mTable = loadCatalog(c, InstrumentCatalog.sourceHash(names, list));
+        if (mTable == null)
+            mTable = InstrumentTable.parse(names, list);
+    }
+
+    private static InstrumentTable loadCatalog(Context c, int sourceHash) {
+        try {
+            InputStream in = c.getAssets().open(InstrumentCatalog.ASSET_NAME);
+            try {
+                return InstrumentCatalog.read(in, sourceHash);
+            } finally {
+                in.close();
             }
+        } catch (FileNotFoundException e) {
+            return null;   // not built with a catalog
+        } catch (IOException e) {
+            Log.w(TAG, "Can't read instrument catalog", e);
+            return null;
         }
-    
+    }
+
+    private static String[] strings(Resources res, int id) {
+        TypedArray array = res.obtainTypedArray(id);
+        String[] result = new String[array.length()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = array.getString(i);
+        array.recycle();
+        return result;
+    }
+
+    /**
+     * Returns the table the instruments are kept in.
+     * @return The instrument table.
+     */
+    public InstrumentTable getTable() {
+        return mTable;
     }
 
     /** 
@@ -86,7 +76,7 @@ public class InstrumentList {
      * @return A list of all available instruments.
      */
     public List<MidiInstrument> list() {
-        return sInstrList;
+        return mTable.list();
     }
 
     /** 
@@ -96,11 +86,7 @@ public class InstrumentList {
      * null if there is no such instrument in the list.
      */
     public MidiInstrument instrumentForCode(int code) {
-        for (MidiInstrument instr : sInstrList) {
-            if (instr.getCode() == code)
-                return instr;
-        }
-        return null;
+        return mTable.instrumentForCode(code);
     }
 
 }
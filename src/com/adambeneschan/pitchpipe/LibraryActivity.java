@@ -0,0 +1,153 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.app.ListActivity;
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Activity that lets the user find a song in the {@link ChordLibrary} by
+ * typing part of its title, and play its starting chord.  Touching a song
+ * plays its chord; holding it adds the song to the setlist.  The library
+ * is the file {@link #LIBRARY_FILE} in the app's external files directory,
+ * made with {@link ChordLibraryGenerator}.  The list shows song numbers
+ * straight from the library's search results; a title is only read from
+ * the library when its row is drawn.
+ * @author Adam Beneschan
+ */
+public class LibraryActivity extends ListActivity {
+
+    /** The name of the library file. */
+    public static final String LIBRARY_FILE = "chord_library.bin";
+
+    private static final String TAG = "LibraryActivity";
+    private static final int sMAX_RESULTS = 500;
+
+    private ChordLibrary mLibrary;
+    private final int[] mResults = new int[sMAX_RESULTS];
+    private int mResultCount = 0;
+    private boolean mShowAll = true;
+    private SongAdapter mAdapter;
+
+    // The rows show either every song in the library, in library order,
+    // or the results of the last search.
+    private class SongAdapter extends BaseAdapter {
+        @Override
+        public int getCount() {
+            if (mLibrary == null)
+                return 0;
+            return mShowAll ? mLibrary.size() : mResultCount;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return null;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return songAt(position);
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            View itemView = convertView;
+            if (itemView == null)
+                itemView = getLayoutInflater().inflate(R.layout.library_item, parent, false);
+            int song = songAt(position);
+            ((TextView) itemView.findViewById(R.id.library_title)).setText(mLibrary.getTitle(song));
+            ((TextView) itemView.findViewById(R.id.library_key)).setText(
+                ChordLibrary.keyName(mLibrary.getKey(song)));
+            return itemView;
+        }
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_library);
+        ChordBuilder.setSink(ChordPlayer.getInstance());
+
+        File dir = getExternalFilesDir(null);
+        File f = (dir == null) ? null : new File(dir, LIBRARY_FILE);
+        if (f != null && f.exists()) {
+            try {
+                mLibrary = ChordLibrary.open(f);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open chord library", e);
+            }
+        }
+        if (mLibrary == null) {
+            ((TextView) findViewById(android.R.id.empty)).setText(
+                getString(R.string.library_missing, LIBRARY_FILE));
+        }
+
+        mAdapter = new SongAdapter();
+        setListAdapter(mAdapter);
+        ((EditText) findViewById(R.id.library_search)).addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                search(s.toString());
+            }
+        });
+        getListView().setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
+            @Override
+            public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id) {
+                addToSetlist(songAt(position));
+                return true;
+            }
+        });
+    }
+
+    @Override
+    protected void onListItemClick(ListView l, View v, int position, long id) {
+        ChordPlayer.getInstance().play(mLibrary.getChord(songAt(position)), null);
+    }
+
+    /**
+     * Shows the songs that match what the user has typed.  Searching the
+     * library is fast enough to do on every keystroke.
+     */
+    private void search(String query) {
+        if (mLibrary == null)
+            return;
+        mShowAll = (query.trim().length() == 0);
+        mResultCount = mShowAll ? 0 : mLibrary.search(query, mResults);
+        mAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * Adds a song's chord to the end of the setlist.
+     */
+    private void addToSetlist(int song) {
+        Setlist setlist = PitchPipeData.getInstance().getSetlist();
+        if (setlist == null)
+            return;
+        setlist.add(new Setlist.Entry(mLibrary.getTitle(song), mLibrary.getChord(song)));
+        if (setlist.peekNext() == setlist.get(setlist.size() - 1))
+            ChordPlayer.getInstance().prefetch(mLibrary.getChord(song));
+        Toast.makeText(this, getString(R.string.setlist_added, setlist.size()), Toast.LENGTH_SHORT).show();
+    }
+
+    private int songAt(int position) {
+        return mShowAll ? position : mResults[position];
+    }
+}
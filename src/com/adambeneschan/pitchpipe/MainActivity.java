@@ -1,10 +1,20 @@
 package com.adambeneschan.pitchpipe;
 
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import android.os.Build;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.app.Activity;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.media.AudioManager;
+import android.media.AudioTrack;
 
 /**
  * The main activity for PitchPipe.  The bulk of the logic is in MainFragment.
@@ -12,6 +22,9 @@ import android.content.SharedPreferences;
  */
 public class MainActivity extends Activity {
 
+    private static final String TAG = "MainActivity";
+    private static final String SETLIST_FILE = "setlist.txt";
+
     MainFragment mFragment;
 
     @Override
@@ -30,6 +43,35 @@ public class MainActivity extends Activity {
         InstrumentList l = new InstrumentList(this);
         PitchPipeData.getInstance().setInstrumentList(l);
         
+        // Read the setlist the first time through; after that it is kept
+        // in PitchPipeData, along with how far the user has got through it.
+        if (PitchPipeData.getInstance().getSetlist() == null)
+            PitchPipeData.getInstance().setSetlist(loadSetlist());
+        
+        // Select the sound engine.  With the PCM engine, start rendering
+        // the current instrument's notes now, so that the first chords
+        // don't have to wait for them.
+        ChordPlayer player = ChordPlayer.getInstance();
+        ChordBuilder.setSink(player);
+        player.setEngine(ChordPlayer.Engine.valueOf(getResources().getString(R.string.sound_engine)));
+        if (player.getEngine() == ChordPlayer.Engine.PCM) {
+            // The first note of a rolled chord is held until the last one
+            // has sounded for the chord's duration, so the cached notes
+            // must be held that long for replays and setlist entries to
+            // use them
+            int hold = getResources().getInteger(R.integer.chord_duration)
+                       + getResources().getInteger(R.integer.roll_delay)
+                         * (getResources().getInteger(R.integer.cached_roll_notes) - 1);
+            NoteSampleCache.getInstance().configure(
+                AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC), hold);
+        }
+        player.setCoalesceWindow(getResources().getInteger(R.integer.tap_coalesce_window));
+        // Keep a timeline of the playback pipeline in debug builds
+        TraceRecorder.getInstance().setEnabled(
+            (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+        MediaPlayerPool.getInstance().setSize(getResources().getInteger(R.integer.player_pool_size));
+        player.warmUp(PitchPipeData.getInstance().getInstrument(), MainFragment.LOWEST_NOTE, MainFragment.HIGHEST_NOTE);
+        
         mFragment = (MainFragment) getFragmentManager().findFragmentById(R.id.fragment_main);
     }
 
@@ -37,6 +79,12 @@ public class MainActivity extends Activity {
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.main, menu);
+        // The latency metrics screen is only for debug builds
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        menu.findItem(R.id.action_metrics).setVisible(debuggable);
+        // Exporting renders on a ForkJoinPool, which older devices lack
+        menu.findItem(R.id.action_setlist_export).setVisible(
+            Build.VERSION.SDK_INT >= MainFragment.EXPORT_MIN_SDK);
         return true;
     }
 
@@ -65,10 +113,57 @@ public class MainActivity extends Activity {
         if (!isChangingConfigurations() && mFragment != null)
             mFragment.stopPitches();
         
+        // Don't hold on to idle MediaPlayers while we're in the background.
+        if (!isChangingConfigurations())
+            MediaPlayerPool.getInstance().clear();
+        
         // Save preferences.
         SharedPreferences settings = getPreferences(MODE_PRIVATE);
         SharedPreferences.Editor editor = settings.edit();
         editor.putInt("instrument", PitchPipeData.getInstance().getInstrument());
         editor.commit();
+        if (!isChangingConfigurations())
+            saveSetlist(PitchPipeData.getInstance().getSetlist());
+    }
+
+    /**
+     * Reads the saved setlist.
+     * @return The setlist, which is empty if none has been saved or it
+     * can't be read.
+     */
+    private Setlist loadSetlist() {
+        File f = new File(getFilesDir(), SETLIST_FILE);
+        if (!f.exists())
+            return new Setlist();
+        try {
+            FileReader r = new FileReader(f);
+            try {
+                return Setlist.read(r);
+            } finally {
+                r.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read setlist", e);
+            return new Setlist();
+        }
+    }
+
+    /**
+     * Saves the setlist, so that it is there the next time the app starts.
+     */
+    private void saveSetlist(Setlist setlist) {
+        if (setlist == null)
+            return;
+        File f = new File(getFilesDir(), SETLIST_FILE);
+        try {
+            FileWriter w = new FileWriter(f);
+            try {
+                setlist.write(w);
+            } finally {
+                w.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not save setlist", e);
+        }
     }
 }
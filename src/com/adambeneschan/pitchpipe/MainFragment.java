@@ -1,18 +1,25 @@
 package com.adambeneschan.pitchpipe;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import android.annotation.TargetApi;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.app.Fragment;
+import android.content.Context;
 import android.content.Intent;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewGroup.LayoutParams;
-import android.widget.FrameLayout;
-import android.widget.TableLayout;
-import android.widget.TableRow;
+import android.widget.Toast;
 
 /**
  * The fragment that performs the main activity for PitchPipe.  
@@ -24,19 +31,43 @@ import android.widget.TableRow;
  */
 public class MainFragment extends Fragment {
 
+    private static final String TAG = "MainFragment";
+
+    /** The first API level with {@code ForkJoinPool}, needed to export. */
+    public static final int EXPORT_MIN_SDK = 21;
+
+    /** The name of the file the setlist is exported to. */
+    public static final String EXPORT_FILE = "setlist.wav";
+
+    // Most chords are for four parts, so more threads than this would
+    // sit idle
+    private static final int sMAX_RENDER_THREADS = 4;
+
+    // Renders the voices of exported chords.  Created on first use and
+    // kept for the life of the process, so that later exports don't pay
+    // to start threads; its threads end by themselves when idle.  (The
+    // common pool would do, but needs API 24.)
+    private static ForkJoinPool sRenderPool = null;
+
     private OctaveIndicators mOctaves;
     private NoteButtons mNotes;
+    private NoteGridView mGrid;
     
-    private static final int sCENTER = 0x11;
-    // defined by FrameLayout.LayoutParams; centers both horizontally and
-    // vertically
+    /** The lowest note on the screen when the app starts (C two octaves below middle C). */
+    public static final int LOWEST_NOTE = 36;
+
+    /** The highest note on the screen when the app starts. */
+    public static final int HIGHEST_NOTE = LOWEST_NOTE + 4 * 12 - 1;
+
+    // The first octave on the screen, kept when the device is rotated
+    private int mFirstOctave = LOWEST_NOTE / 12;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         
         PitchPipeData.getInstance().setChord(null);
-        ChordPlayer.getInstance().setFragment(this);
+        ChordPlayer.getInstance().setCacheDir(getActivity().getCacheDir());
         
         // Don't destroy the fragment if the device is rotated.
         setRetainInstance(true);
@@ -45,12 +76,20 @@ public class MainFragment extends Fragment {
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View v = inflater.inflate(R.layout.fragment_main, container, false);
-        mOctaves = new OctaveIndicators(this);
+        mOctaves = new OctaveIndicators(getActivity());
         mNotes = new NoteButtons(getActivity(), Utilities.isLandscape(getActivity()));
         setupDisplay(mOctaves, mNotes, v);
         return v;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mFirstOctave = mGrid.getFirstOctave();
+        mGrid = null;
+        mOctaves.clear();
+    }
+
     /**
      * Halts the play of the chord, if play is in progress.
      */
@@ -75,6 +114,129 @@ public class MainFragment extends Fragment {
         }
     }
     
+    /**
+     * Adds the last chord, rolled the way Replay plays it, to the end of
+     * the setlist.  Does nothing if there is no chord.
+     */
+    public void addToSetlist() {
+        PitchPipeData data = PitchPipeData.getInstance();
+        ChordBuilder ch = data.getChord();
+        Setlist setlist = data.getSetlist();
+        if (ch == null || setlist == null)
+            return;
+        int instr = data.getInstrument();
+        int duration = Math.min(getResources().getInteger(R.integer.chord_duration),
+                                data.getInstrumentList().instrumentForCode(instr).getFade());
+        Chord chord = ch.toChord(instr, duration, getResources().getInteger(R.integer.roll_delay));
+        if (chord.getNoteCount() == 0)
+            return;
+        setlist.add(new Setlist.Entry(getString(R.string.setlist_entry_name, setlist.size() + 1), chord));
+        Toast.makeText(getActivity(), getString(R.string.setlist_added, setlist.size()),
+                       Toast.LENGTH_SHORT).show();
+        prefetchNextInSetlist();
+    }
+
+    /**
+     * Plays the next chord in the setlist, and gets the one after it ready
+     * while this one sounds, so that it too can start at once.  At the end
+     * of the setlist, goes back to the start.
+     */
+    public void playNextInSetlist() {
+        Setlist setlist = PitchPipeData.getInstance().getSetlist();
+        if (setlist == null || setlist.size() == 0) {
+            Toast.makeText(getActivity(), R.string.setlist_empty, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Setlist.Entry entry = setlist.next();
+        if (entry == null) {
+            setlist.rewind();
+            prefetchNextInSetlist();
+            Toast.makeText(getActivity(), R.string.setlist_end, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        ChordPlayer player = ChordPlayer.getInstance();
+        player.play(entry.getChord(), null);
+        prefetchNextInSetlist();
+        Toast.makeText(getActivity(), entry.getName(), Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Removes every chord from the setlist.
+     */
+    public void clearSetlist() {
+        Setlist setlist = PitchPipeData.getInstance().getSetlist();
+        if (setlist != null)
+            setlist.clear();
+    }
+
+    /**
+     * Renders the setlist's chords, one after another, to a WAV file in
+     * the app's external files directory, in the background.  The user is
+     * told where the file is and how fast it was rendered.  Needs API
+     * level {@link #EXPORT_MIN_SDK}.
+     */
+    @TargetApi(EXPORT_MIN_SDK)
+    public void exportSetlist() {
+        PitchPipeData data = PitchPipeData.getInstance();
+        Setlist setlist = data.getSetlist();
+        File dir = getActivity().getExternalFilesDir(null);
+        if (setlist == null || setlist.size() == 0 || dir == null) {
+            Toast.makeText(getActivity(), R.string.setlist_empty, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final List<Chord> chords = new ArrayList<Chord>(setlist.size());
+        for (int i = 0; i < setlist.size(); i++)
+            chords.add(setlist.get(i).getChord());
+        final File f = new File(dir, EXPORT_FILE);
+        final WavRenderer renderer = new WavRenderer(
+            getResources().getInteger(R.integer.export_sample_rate),
+            getResources().getInteger(R.integer.export_bits_per_sample),
+            data.getInstrumentList().getTable(), renderPool());
+        final int gap = getResources().getInteger(R.integer.export_gap);
+        final Context context = getActivity().getApplicationContext();
+        new AsyncTask<Void, Void, WavRenderer.Result>() {
+            @Override
+            protected WavRenderer.Result doInBackground(Void... params) {
+                try {
+                    return renderer.render(chords, gap, f);
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not export setlist", e);
+                    return null;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(WavRenderer.Result result) {
+                if (result == null) {
+                    Toast.makeText(context, R.string.export_failed, Toast.LENGTH_LONG).show();
+                    return;
+                }
+                Log.i(TAG, "Exported setlist: " + result);
+                Toast.makeText(context, context.getString(R.string.export_done, f.getAbsolutePath(),
+                                                          result.getRealtimeFactor()),
+                               Toast.LENGTH_LONG).show();
+            }
+        }.execute();
+    }
+
+    @TargetApi(EXPORT_MIN_SDK)
+    private static synchronized ForkJoinPool renderPool() {
+        if (sRenderPool == null)
+            sRenderPool = new ForkJoinPool(Math.min(sMAX_RENDER_THREADS,
+                                                    Runtime.getRuntime().availableProcessors()));
+        return sRenderPool;
+    }
+
+    /**
+     * Gets the next chord in the setlist ready to play, if there is one.
+     */
+    private void prefetchNextInSetlist() {
+        Setlist setlist = PitchPipeData.getInstance().getSetlist();
+        Setlist.Entry next = (setlist == null) ? null : setlist.peekNext();
+        if (next != null)
+            ChordPlayer.getInstance().prefetch(next.getChord());
+    }
+
     /**
      * Brings up the "instrument menu" activity to let the user select
      * an instrument (MIDI program) for playing chords from a menu.
@@ -84,6 +246,22 @@ public class MainFragment extends Fragment {
         startActivity(intent);
     }
 
+    /**
+     * Brings up the song library, to find a song's starting chord.
+     */
+    public void showLibrary() {
+        Intent intent = new Intent(getActivity(), LibraryActivity.class);
+        startActivity(intent);
+    }
+
+    /**
+     * Brings up the latency metrics (a debugging aid).
+     */
+    public void showMetrics() {
+        Intent intent = new Intent(getActivity(), MetricsActivity.class);
+        startActivity(intent);
+    }
+
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -103,9 +281,27 @@ public class MainFragment extends Fragment {
             case R.id.action_replay:
                 replayPitches();
                 return true;
+            case R.id.action_setlist_next:
+                playNextInSetlist();
+                return true;
+            case R.id.action_setlist_add:
+                addToSetlist();
+                return true;
+            case R.id.action_setlist_export:
+                exportSetlist();
+                return true;
+            case R.id.action_setlist_clear:
+                clearSetlist();
+                return true;
+            case R.id.action_library:
+                showLibrary();
+                return true;
             case R.id.action_change_instrument:
                 changeInstrument();
                 return true;
+            case R.id.action_metrics:
+                showMetrics();
+                return true;
             default:
                 return false;
         }
@@ -114,119 +310,60 @@ public class MainFragment extends Fragment {
     /**
      * Displays the main layout, consisting of "note buttons" (the buttons
      * the user presses to add notes to a chord) and "octave indicators" 
-     * (graphics that show what octave each row of notes belongs to).
+     * (graphics that show what octave each row of notes belongs to), all
+     * drawn by a single {@link NoteGridView}.
      * (Additional buttons may be added in the future to deal with smaller
      * displays.)
      * @param octaves Supplies the images used to display octave indicators.
      * @param notes Supplies the buttons used to select notes.
-     * @param containing The view that contains the image and button views.
+     * @param containing The view that contains the note grid.
      */
     private void setupDisplay(OctaveIndicators octaves, NoteButtons notes, View containing) {
-        TableRow row;
-        
-        if (!Utilities.isLandscape(getActivity())) {
-            // Portrait mode.  Table will have 13 rows, 4 columns.  
-            // The top item in each column is an image that indicates the
-            // octave; below that are buttons for C, C#, ..., B.
-        
-            TableLayout octaveTable = (TableLayout) containing.findViewById(R.id.octaves);
-            TableLayout buttonTable = (TableLayout) containing.findViewById(R.id.buttons);
-
-            // The weight of each row is the height of the thing displayed
-            // in the row (octave indicator or button); this will cause the
-            // rows to be spaced pretty evenly in the layout.
-               
-            // Set up the first row.
-            row = new TableRow(getActivity());
-            for (int c = 0; c < 4; c++) {
-                View indicator = octaves.getIndicator(c);
-                row.addView(indicator);
-                indicator.setLayoutParams(new TableRow.LayoutParams(0, LayoutParams.MATCH_PARENT, 1F));
-            }
-            row.setLayoutParams(new TableLayout.LayoutParams(LayoutParams.MATCH_PARENT, 0, (float)octaves.indicatorHeight()));
-            octaveTable.addView(row);
-
-            // Set up rows of buttons.
-            for (int r = 0; r < 12; r++) {
-                row = new TableRow(getActivity());
-                for (int c = 0; c < 4; c++) {
-                    // column number = octave number, row number = note number
-                    View button = notes.getButton(c, r);
-                    setupButtonListener(button, c, r);
-                    row.addView(button);
-                    button.setLayoutParams(new TableRow.LayoutParams(0, LayoutParams.MATCH_PARENT, 1F));
-                }
-                row.setLayoutParams(new TableLayout.LayoutParams(LayoutParams.MATCH_PARENT, 0, (float)notes.buttonHeight()));
-                buttonTable.addView(row);
-            }
-        
-        } else {
-            // Landscape mode.  Table will have 4 rows, 13 columns.
-            // The leftmost item in each row is an image that indicates the
-            // octave; to the right are buttons for C, C#, ..., B.
-        
-            TableLayout table = (TableLayout) containing.findViewById(R.id.octaves_and_buttons);
-            
-            // The weight of each column is the width of the thing displayed
-            // in the row (octave indicator or button); this will cause the
-            // rows to be spaced pretty evenly in the layout.
-            
-            for (int r = 0; r < 4; r++) {
-                row = new TableRow(getActivity());
-                FrameLayout cell = new FrameLayout(getActivity());
-                
-                // Add octave indicator to row.
-                View indicator = octaves.getIndicator(r);
-                indicator.setLayoutParams(new FrameLayout.LayoutParams(octaves.indicatorWidth(), octaves.indicatorHeight(), sCENTER));
-                cell.addView(indicator);
-                cell.setLayoutParams(new TableRow.LayoutParams(0, LayoutParams.MATCH_PARENT, octaves.indicatorWidth()));
-                row.addView(cell);                
-                
-                // Add note buttons to row.
-                for (int c = 0; c < 12; c++) {
-                    cell = new FrameLayout(getActivity());
-                    // row number = octave number, column number = note number
-                    View button = notes.getButton(r, c);
-                    setupButtonListener(button, r, c);
-                    button.setLayoutParams(new FrameLayout.LayoutParams(notes.buttonWidth(), notes.buttonHeight(), sCENTER));
-                    cell.addView(button);
-                    cell.setLayoutParams(new TableRow.LayoutParams(0, LayoutParams.MATCH_PARENT, notes.buttonWidth()));
-                    row.addView(cell);
-                }
-                
-                // Add the row to the view.
-                row.setLayoutParams(new TableLayout.LayoutParams(LayoutParams.MATCH_PARENT, 0, 1F));
-                table.addView(row);
-            }
-        }
-    }
-
-    private void setupButtonListener(View button, final int octave, final int note) {
-        button.setOnClickListener(new View.OnClickListener() {
-            public void onClick(View v) {
-                addNote(octave, note);
+        mGrid = (NoteGridView) containing.findViewById(R.id.note_grid);
+        mGrid.setup(octaves, notes, Utilities.isLandscape(getActivity()));
+        mGrid.setFirstOctave(mFirstOctave);
+        mGrid.setChordWindow(getResources().getInteger(R.integer.chord_gesture_window));
+        mGrid.setOnNoteListener(new NoteGridView.OnNoteListener() {
+            public void onNotes(int[] notes, long downTime) {
+                PlaybackMetrics.getInstance().tap(downTime);
+                addNotes(notes);
             }
         });
     }
 
-    public void addNote(int octave, int note) {
-        int n = 36 + 12*octave + note;
-        
+    /**
+     * Adds notes to the chord being built, or starts a new chord with
+     * them, and plays the chord once.
+     * @param notes The notes, as MIDI notes (60=middle C).
+     */
+    public void addNotes(int[] notes) {
+
         final PitchPipeData data = PitchPipeData.getInstance();
         ChordPlayer player = ChordPlayer.getInstance();
         ChordBuilder ch = data.getChord();
+        boolean adding = true;
         if (ch == null || !player.isPlaying() || data.getPlayingChord() != ch) {
             // Start a new chord, unless we've already started one and that
             // same chord is still playing, in which case we want to add to
             // it.
             ch = new ChordBuilder();
             data.setChord(ch);
+            adding = false;
         }
-        ch.add(n);
+        for (int n : notes)
+            ch.add(n);
         data.setPlayingChord(ch);
         int instr = data.getInstrument();
         int duration = getResources().getInteger(R.integer.chord_duration);
-        ch.play(instr, Math.min(duration, data.getInstrumentList().instrumentForCode(instr).getFade()), 0);
+        duration = Math.min(duration, data.getInstrumentList().instrumentForCode(instr).getFade());
+        if (adding && notes.length == 1)
+            ch.playAdded(instr, duration);
+        else
+            ch.play(instr, duration, 0);
+        
+        // The user may well want to hear this chord rolled next, so get
+        // that ready while this one plays.
+        ch.prefetch(instr, duration, getResources().getInteger(R.integer.roll_delay));
     }
 
 }
@@ -0,0 +1,431 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.util.Log;
+
+/**
+ * A small pool of reusable {@code MediaPlayer}s.  Instead of being
+ * released after each chord, a player is reset and kept for the next one,
+ * and a chord that is likely to be played next can be prefetched: its
+ * player is loaded and prepared (with {@code prepareAsync}) in the
+ * background while the current chord plays, so that when it is played
+ * the prepare time has already been paid.  Prefetches are loaded one at
+ * a time by a single worker thread; a prefetch that hasn't been started
+ * when another one is asked for is dropped, so a burst of taps loads only
+ * the latest chord.  Players are identified by a key, normally the
+ * {@link Chord} they will play.  There should be only one instance of
+ * this class in an app.
+ * @author Adam Beneschan
+ */
+public class MediaPlayerPool {
+
+    /** The default maximum number of players, playing or not. */
+    public static final int DEFAULT_SIZE = 3;
+
+    private static final String TAG = "MediaPlayerPool";
+
+    private static MediaPlayerPool sPool = null;
+
+    /**
+     * Interface definition for the code that gives a player the data it
+     * is to play.
+     */
+    public interface Loader {
+        /**
+         * Sets a player's data source.  May be called on a background
+         * thread.
+         * @param player The player, which has just been reset.
+         * @return A temporary file holding the data, to be deleted when the
+         * player is reset again, or {@code null}.
+         * @throws IOException if the data can't be created.
+         */
+        public File load(MediaPlayer player) throws IOException;
+    }
+
+    /**
+     * A player taken from the pool, along with what it was loaded with.
+     */
+    public static class PooledPlayer {
+        private static final int sIDLE = 0;
+        private static final int sLOADING = 1;
+        private static final int sPREPARED = 2;
+        private static final int sFAILED = 3;
+        private static final int sIN_USE = 4;
+
+        private final MediaPlayer mPlayer;
+        private Object mKey = null;
+        private File mFile = null;
+        private int mState = sIDLE;
+
+        private PooledPlayer(MediaPlayer player) {
+            mPlayer = player;
+        }
+
+        /**
+         * Returns the player, which is prepared and ready to start.
+         * @return The player.
+         */
+        public MediaPlayer getPlayer() {
+            return mPlayer;
+        }
+    }
+
+    private final ArrayList<PooledPlayer> mPlayers = new ArrayList<PooledPlayer>();
+    private int mSize = DEFAULT_SIZE;
+    private int mHits = 0;
+    private int mColdStarts = 0;
+    private int mCreated = 0;
+
+    // The prefetch waiting for the worker, if any, and the worker itself
+    private PooledPlayer mPending = null;
+    private Loader mPendingLoader = null;
+    private Thread mWorker = null;
+
+    private MediaPlayerPool() { }
+
+    /**
+     * Returns the single instance of this class.
+     * @return The single instance of this class.
+     */
+    public static synchronized MediaPlayerPool getInstance() {
+        if (sPool == null) {
+            sPool = new MediaPlayerPool();
+        }
+        return sPool;
+    }
+
+    /**
+     * Sets the maximum number of players.  Idle players beyond the new
+     * size are released.
+     * @param size The maximum number of players, at least 1.  With 1, no
+     * chord can be prefetched while another is playing.
+     */
+    public synchronized void setSize(int size) {
+        mSize = Math.max(1, size);
+        trim();
+    }
+
+    /**
+     * Returns the maximum number of players.
+     * @return The pool size.
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Gets a prepared player for a key.  If the key has been prefetched,
+     * waits for its prepare to finish if necessary (a pool hit); otherwise
+     * loads and prepares a player on this thread (a cold start).
+     * @param key The key, e.g. the {@link Chord} to play.
+     * @param loader Sets the player's data source, on a cold start.
+     * @return The player, which must be given back with {@link #recycle}.
+     * @throws IOException if the player can't be loaded or prepared.
+     * @throws InterruptedException if interrupted while waiting for a
+     * prefetched player.
+     */
+    public PooledPlayer acquire(Object key, Loader loader) throws IOException, InterruptedException {
+        PooledPlayer p;
+        long start = System.nanoTime();
+        synchronized (this) {
+            p = find(key);
+            if (p != null && p == mPending) {
+                // Its prefetch hasn't started; load it here instead
+                mPending = null;
+                mPendingLoader = null;
+            } else if (p != null) {
+                while (p.mState == PooledPlayer.sLOADING && key.equals(p.mKey))
+                    wait();
+                if (!key.equals(p.mKey)) {
+                    p = null;   // dropped while we waited
+                } else if (p.mState == PooledPlayer.sPREPARED) {
+                    p.mState = PooledPlayer.sIN_USE;
+                    mHits++;
+                    PlaybackMetrics.getInstance().record(PlaybackMetrics.Stage.PREPARE, start);
+                    return p;
+                } else {
+                    discard(p);   // the prefetch failed; start again
+                    p = null;
+                }
+            }
+            mColdStarts++;
+            if (p == null) {
+                // Stay within the pool size, waiting for a prefetch
+                // that is being prepared if every player is busy
+                while (!evictPrefetched())
+                    wait();
+                p = take();
+            }
+            p.mKey = key;
+            p.mState = PooledPlayer.sIN_USE;
+        }
+        try {
+            p.mFile = loader.load(p.mPlayer);
+            start = System.nanoTime();
+            p.mPlayer.prepare();
+            PlaybackMetrics.getInstance().record(PlaybackMetrics.Stage.PREPARE, start);
+        } catch (IOException e) {
+            recycle(p);
+            throw e;
+        } catch (RuntimeException e) {
+            recycle(p);
+            throw e;
+        }
+        return p;
+    }
+
+    /**
+     * Starts loading and preparing a player for a key in the background,
+     * so that a later {@link #acquire} with the same key doesn't have to
+     * wait for the prepare.  Does nothing if the key has already been
+     * prefetched or every player is in use.
+     * @param key The key, e.g. the {@link Chord} likely to be played next.
+     * @param loader Sets the player's data source; called on a background
+     * thread.
+     */
+    public void prefetch(Object key, Loader loader) {
+        synchronized (this) {
+            if (find(key) != null)
+                return;
+            if (mPending != null) {
+                // Superseded before the worker got to it
+                discard(mPending);
+                mPending = null;
+                mPendingLoader = null;
+            }
+            if (!evictPrefetched())
+                return;
+            PooledPlayer p = take();
+            p.mKey = key;
+            p.mState = PooledPlayer.sLOADING;
+            mPending = p;
+            mPendingLoader = loader;
+            if (mWorker == null) {
+                mWorker = new Thread("MediaPlayerPool") {
+                    @Override
+                    public void run() {
+                        runPrefetches();
+                    }
+                };
+                mWorker.setDaemon(true);
+                mWorker.start();
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * The worker thread: loads each prefetched player in turn and starts
+     * it preparing.
+     */
+    private void runPrefetches() {
+        while (true) {
+            final PooledPlayer p;
+            Loader loader;
+            synchronized (this) {
+                while (mPending == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                p = mPending;
+                loader = mPendingLoader;
+                mPending = null;
+                mPendingLoader = null;
+            }
+            try {
+                File f = loader.load(p.mPlayer);
+                synchronized (this) {
+                    p.mFile = f;
+                }
+                p.mPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+                    @Override
+                    public void onPrepared(MediaPlayer mp) {
+                        setState(p, PooledPlayer.sPREPARED);
+                    }
+                });
+                p.mPlayer.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+                    @Override
+                    public boolean onError(MediaPlayer mp, int what, int extra) {
+                        setState(p, PooledPlayer.sFAILED);
+                        return true;
+                    }
+                });
+                p.mPlayer.prepareAsync();
+            } catch (Exception e) {
+                Log.e(TAG, "Exception prefetching chord", e);
+                setState(p, PooledPlayer.sFAILED);
+            }
+        }
+    }
+
+    /**
+     * Gives a player back to the pool once it has finished playing.  The
+     * player is reset and kept for reuse, or released if the pool is full.
+     * @param p The player returned by {@link #acquire}.
+     */
+    public synchronized void recycle(PooledPlayer p) {
+        discard(p);
+        trim();
+        notifyAll();   // an acquire may be waiting for a free player
+    }
+
+    /**
+     * Releases every player that isn't in use.
+     */
+    public synchronized void clear() {
+        Iterator<PooledPlayer> it = mPlayers.iterator();
+        while (it.hasNext()) {
+            PooledPlayer p = it.next();
+            if (p.mState != PooledPlayer.sIN_USE && p.mState != PooledPlayer.sLOADING) {
+                discard(p);
+                p.mPlayer.release();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of acquires that found the player prefetched.
+     * @return The number of pool hits.
+     */
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of acquires that had to prepare a player.
+     * @return The number of cold starts.
+     */
+    public synchronized int getColdStarts() {
+        return mColdStarts;
+    }
+
+    /**
+     * Returns the number of {@code MediaPlayer}s that have been created.
+     * @return The number of players created.
+     */
+    public synchronized int getCreated() {
+        return mCreated;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MediaPlayerPool[players=" + mPlayers.size() + ", size=" + mSize
+            + ", hits=" + mHits + ", coldStarts=" + mColdStarts
+            + ", created=" + mCreated + "]";
+    }
+
+    private synchronized void setState(PooledPlayer p, int state) {
+        if (p.mState == PooledPlayer.sLOADING)
+            p.mState = state;
+        notifyAll();
+    }
+
+    /**
+     * Finds the player loaded (or being loaded) for a key.  Must be called
+     * with the lock held.
+     */
+    private PooledPlayer find(Object key) {
+        if (key == null)
+            return null;
+        for (PooledPlayer p : mPlayers) {
+            if (p.mState != PooledPlayer.sIN_USE && p.mState != PooledPlayer.sIDLE
+                    && key.equals(p.mKey))
+                return p;
+        }
+        return null;
+    }
+
+    /**
+     * Makes sure there is room for another player, resetting an older
+     * prefetched one if necessary.  Must be called with the lock held.
+     * @return {@code false} if every player is in use or being loaded.
+     */
+    private boolean evictPrefetched() {
+        if (mPlayers.size() < mSize)
+            return true;
+        for (PooledPlayer p : mPlayers) {
+            if (p.mState == PooledPlayer.sIDLE)
+                return true;
+        }
+        for (PooledPlayer p : mPlayers) {
+            if (p.mState == PooledPlayer.sPREPARED || p.mState == PooledPlayer.sFAILED) {
+                discard(p);
+                return true;
+            }
+        }
+        if (mPending != null) {
+            // A prefetch the worker hasn't started can be dropped too
+            discard(mPending);
+            mPending = null;
+            mPendingLoader = null;
+            notifyAll();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes an idle player, creating one if there is none.  Must be called
+     * with the lock held.
+     */
+    private PooledPlayer take() {
+        for (PooledPlayer p : mPlayers) {
+            if (p.mState == PooledPlayer.sIDLE)
+                return p;
+        }
+        MediaPlayer player = new MediaPlayer();
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        mCreated++;
+        PooledPlayer p = new PooledPlayer(player);
+        mPlayers.add(p);
+        return p;
+    }
+
+    /**
+     * Resets a player and marks it idle.  Must be called with the lock
+     * held.
+     */
+    private void discard(PooledPlayer p) {
+        try {
+            p.mPlayer.reset();
+        } catch (Exception e) {
+            Log.e(TAG, "Exception resetting MediaPlayer", e);
+        }
+        p.mPlayer.setOnCompletionListener(null);
+        p.mPlayer.setOnPreparedListener(null);
+        p.mPlayer.setOnErrorListener(null);
+        p.mPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        if (p.mFile != null) {
+            p.mFile.delete();
+            p.mFile = null;
+        }
+        p.mKey = null;
+        p.mState = PooledPlayer.sIDLE;
+    }
+
+    /**
+     * Releases idle players until the pool is within its size.  Must be
+     * called with the lock held.
+     */
+    private void trim() {
+        Iterator<PooledPlayer> it = mPlayers.iterator();
+        while (mPlayers.size() > mSize && it.hasNext()) {
+            PooledPlayer p = it.next();
+            if (p.mState == PooledPlayer.sIDLE) {
+                p.mPlayer.release();
+                it.remove();
+            }
+        }
+    }
+
+}
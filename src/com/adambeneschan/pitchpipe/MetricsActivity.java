@@ -0,0 +1,129 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Debugging activity that shows the latency histograms kept by
+ * {@link PlaybackMetrics}, and can save them to a file so that devices
+ * can be compared.  It can also save the timeline kept by
+ * {@link TraceRecorder}, as a JSON file for a trace viewer.
+ * @author Adam Beneschan
+ */
+public class MetricsActivity extends Activity {
+
+    private static final String TAG = "MetricsActivity";
+
+    private TextView mText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        mText = (TextView) findViewById(R.id.metrics_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        // Inflate the menu; this adds items to the action bar if it is present.
+        getMenuInflater().inflate(R.menu.metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        // Handle presses on the action bar items
+        switch (item.getItemId()) {
+            case R.id.action_refresh_metrics:
+                refresh();
+                return true;
+            case R.id.action_dump_metrics:
+                dump();
+                return true;
+            case R.id.action_dump_trace:
+                dumpTrace();
+                return true;
+            case R.id.action_reset_metrics:
+                PlaybackMetrics.getInstance().reset();
+                refresh();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    /**
+     * Describes the device and the way chords are being played, so that
+     * saved metrics from different devices can be told apart.
+     */
+    private static String heading() {
+        return Build.MANUFACTURER + " " + Build.MODEL + ", API " + Build.VERSION.SDK_INT
+            + ", engine " + ChordPlayer.getInstance().getEngine()
+            + ", in memory " + ChordPlayer.getInstance().isInMemory();
+    }
+
+    private void refresh() {
+        mText.setText(heading() + "\n(times in ms)\n\n"
+                      + PlaybackMetrics.getInstance()
+                      + "\n" + MediaPlayerPool.getInstance()
+                      + "\n" + EncodedChordCache.getInstance());
+    }
+
+    /**
+     * Returns a file named after the device and the time, in the app's
+     * external files directory if there is one.
+     */
+    private File outputFile(String prefix, String suffix) {
+        File dir = getExternalFilesDir(null);
+        if (dir == null)
+            dir = getFilesDir();
+        return new File(dir, prefix + "-" + Build.MODEL.replaceAll("[^A-Za-z0-9]+", "_")
+                        + "-" + System.currentTimeMillis() + suffix);
+    }
+
+    /**
+     * Saves the metrics to a file.
+     */
+    private void dump() {
+        File f = outputFile("latency", ".txt");
+        try {
+            PlaybackMetrics.getInstance().dump(f, heading());
+            Toast.makeText(this, getString(R.string.metrics_saved, f.getAbsolutePath()),
+                           Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Exception saving metrics", e);
+            Toast.makeText(this, R.string.metrics_not_saved, Toast.LENGTH_LONG).show();
+        }
+    }
+
+    /**
+     * Saves the trace to a file, in the Chrome trace event format.
+     */
+    private void dumpTrace() {
+        File f = outputFile("trace", ".json");
+        try {
+            TraceRecorder.getInstance().export(f);
+            Toast.makeText(this, getString(R.string.metrics_saved, f.getAbsolutePath()),
+                           Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Exception saving trace", e);
+            Toast.makeText(this, R.string.metrics_not_saved, Toast.LENGTH_LONG).show();
+        }
+    }
+
+}
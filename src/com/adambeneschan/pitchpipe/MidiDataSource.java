@@ -0,0 +1,54 @@
+package com.adambeneschan.pitchpipe;
+
+import android.annotation.TargetApi;
+import android.media.MediaDataSource;
+import android.os.Build;
+
+/**
+ * A {@code MediaDataSource} that supplies an in-memory MIDI file to a
+ * {@code MediaPlayer}, so that a chord can be played without writing a
+ * temporary file.  Requires API level 23.
+ * @author Adam Beneschan
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public class MidiDataSource extends MediaDataSource {
+
+    private byte[] mData;
+
+    /**
+     * Constructs a MidiDataSource.
+     * @param data The contents of the MIDI file.  The array is not copied,
+     * so it must not be changed while the data source is in use.
+     */
+    public MidiDataSource(byte[] data) {
+        mData = data;
+    }
+
+    /**
+     * Tests whether in-memory data sources can be used on this device.
+     * @return {@code true} if the platform supports {@code MediaDataSource}.
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) {
+        if (position >= mData.length)
+            return -1;   // end of data
+        int n = (int) Math.min(size, mData.length - position);
+        System.arraycopy(mData, (int) position, buffer, offset, n);
+        return n;
+    }
+
+    @Override
+    public long getSize() {
+        return mData.length;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release; the array is left to the garbage collector
+    }
+
+}
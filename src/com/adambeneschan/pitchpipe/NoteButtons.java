@@ -4,19 +4,24 @@
 package com.adambeneschan.pitchpipe;
 
 import android.content.Context;
-import android.graphics.Typeface;
-import android.util.TypedValue;
-import android.view.View;
-import android.widget.Button;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
 
 /**
- * Supplies the note buttons that will be 
+ * Supplies what is needed to draw the note buttons in a
+ * {@link NoteGridView}: the label for each note, its text size, the
+ * button background, and the size of a button.  The labels and sizes are
+ * looked up once, when the object is constructed.
  * @author Adam Beneschan
  *
  */
 public class NoteButtons {
 
     private Context mContext;
+    private String[] mLabels = new String[12];
+    private int[] mTextSizes = new int[12];
+    private int mButtonWidth;
+    private int mButtonHeight;
 
     // Table listing the note names for the notes of the chromatic scale.
     // If the button should display two notes (e.g. C#/Db), they are 
@@ -36,39 +41,56 @@ public class NoteButtons {
      */
     public NoteButtons(Context c, boolean isLandscape) {
         this.mContext = c;
+        Resources res = c.getResources();
+        
+        // If a name contains a slash, the note is an accidental with two
+        // names, e.g. C#/Db, D#/Eb, etc.  The accidental_separator 
+        // resource gives us the string that will appear between two 
+        // note names on a button; this could be different in portrait
+        // and landscape mode, for instance.
+        String sep = res.getString(R.string.accidental_separator);
+        int normalSize = res.getInteger(R.integer.normal_text_size);
+        int accidentalSize = res.getInteger(R.integer.accidental_text_size);
+        mButtonWidth = res.getInteger(R.integer.button_width);
+        mButtonHeight = res.getInteger(R.integer.button_height);
+        for (int note = 0; note < 12; note++) {
+            String s = sNoteName[note];
+            if (s.contains("/")) {
+                mLabels[note] = s.replace("/", sep);
+                mTextSizes[note] = accidentalSize;
+            } else {
+                mLabels[note] = s;
+                mTextSizes[note] = normalSize;
+            }
+        }
     }
 
     /**
-     * Creates a button to be displayed for a given note.
-     * @param octave The octave number, an integer from 0 to 3 inclusive
-     * (0 = octave starting at low C, 1 = the octave above #0, 
-     * 2 = octave starting at middle C, 3 = the octave above #2).
+     * Returns the text to be displayed on the button for a note.
      * @param note The note in the scale, an integer from 0 to 11 inclusive
-     * (0 = C, 1 = C#, ..., 2 = B)
+     * (0 = C, 1 = C#, ..., 11 = B)
+     * @return The label.
      */
-    public View getButton(final int octave, final int note) {
-        Button button = new Button(mContext);
-        String s = sNoteName[note];
-        
-        int textSize;
-        if (s.contains("/")) {
-            // If s contains a slash, the note is an accidental with two
-            // names, e.g. C#/Db, D#/Eb, etc.  The accidental_separator 
-            // resource gives us the string that will appear between two 
-            // note names on a button; this could be different in portrait
-            // and landscape mode, for instance.
-            String sep = mContext.getResources().getString(R.string.accidental_separator);
-            s = s.replaceAll("/", sep);
-            textSize = mContext.getResources().getInteger(R.integer.accidental_text_size);
-        } else {
-            textSize = mContext.getResources().getInteger(R.integer.normal_text_size);
-        }
-        
-        button.setTextSize(TypedValue.COMPLEX_UNIT_DIP, textSize);
-        button.setTypeface(Typeface.defaultFromStyle(Typeface.BOLD));
-        button.setText(s);
-        button.setBackgroundResource(R.drawable.note_button);
-        return button;
+    public String getLabel(int note) {
+        return mLabels[note];
+    }
+
+    /**
+     * Returns the size of the text on the button for a note.
+     * @param note The note in the scale, from 0 to 11.
+     * @return The text size, in density-independent pixels.
+     */
+    public int getTextSize(int note) {
+        return mTextSizes[note];
+    }
+
+    /**
+     * Returns a new drawable for the background of a note button, whose
+     * appearance depends on whether the button is pressed.
+     * @return The background.
+     */
+    public Drawable getBackground() {
+        return mContext.getResources().getDrawable(R.drawable.note_button);
     }
 
     /**
@@ -77,7 +99,7 @@ public class NoteButtons {
      * orientation and other configuration aspects).
      */
     public int buttonWidth() {
-        return mContext.getResources().getInteger(R.integer.button_width);
+        return mButtonWidth;
     }
 
     /**
@@ -86,7 +108,7 @@ public class NoteButtons {
      * orientation and other configuration aspects).
      */
     public int buttonHeight() {
-        return mContext.getResources().getInteger(R.integer.button_height);
+        return mButtonHeight;
     }
 
 }
@@ -0,0 +1,628 @@
+package com.adambeneschan.pitchpipe;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.widget.OverScroller;
+
+/**
+ * A single view that draws the note buttons, and the octave indicators
+ * that go with them, and handles touches on them itself.  This takes the
+ * place of a table of {@code Button}s, which was slow to build and lay
+ * out each time the device was rotated.  Notes are reported when their
+ * buttons are touched, rather than when the finger is lifted.  Several
+ * fingers can be put down at once: buttons touched within a short window
+ * of the first are reported together, so that a whole chord can be put
+ * down in one gesture and played once.
+ * <p>
+ * The keyboard covers the whole MIDI range, 0 to 127, in 11 octaves, of
+ * which 4 fit on the screen; dragging or flinging the octave indicators
+ * scrolls through the rest.  In portrait mode each octave is a column,
+ * with the octave indicator at the top and buttons for C, C#, ..., B below
+ * it, and the keyboard scrolls horizontally.  In landscape mode each
+ * octave is a row, with the octave indicator at the left, and the keyboard
+ * scrolls vertically.  Only the octaves on the screen are drawn or
+ * hit-tested, and only their indicator images are kept, so the cost
+ * doesn't depend on how many octaves there are.
+ * @author Adam Beneschan
+ */
+public class NoteGridView extends View {
+
+    /**
+     * Interface definition for a callback to be invoked when note buttons
+     * are touched.
+     */
+    public interface OnNoteListener {
+        /**
+         * Called when one or more note buttons have been touched.
+         * @param notes The notes, as MIDI notes (60=middle C), in the
+         * order they were touched.
+         * @param downTime When the first of them was touched, as from
+         * {@code System.nanoTime}.
+         */
+        public void onNotes(int[] notes, long downTime);
+    }
+
+    /** The default chord window, in milliseconds. */
+    public static final int DEFAULT_CHORD_WINDOW = 50;
+
+    /** The number of octaves; the last is incomplete, ending at G. */
+    public static final int OCTAVES = (Chord.MAX_NOTE / 12) + 1;
+
+    private static final int sVISIBLE_OCTAVES = 4;
+    private static final int sNOTES = 12;
+    private static final int sMAX_POINTERS = 10;
+
+    private static final int[] sNORMAL_STATE = new int[] {
+        android.R.attr.state_window_focused, android.R.attr.state_enabled
+    };
+    private static final int[] sPRESSED_STATE = new int[] {
+        android.R.attr.state_window_focused, android.R.attr.state_enabled,
+        android.R.attr.state_pressed
+    };
+
+    private OctaveIndicators mOctaves;
+    private NoteButtons mNotes;
+    private boolean mLandscape;
+    private OnNoteListener mListener;
+
+    private Drawable mButton;
+    private ColorStateList mTextColors;
+    private StaticLayout[] mLabels = new StaticLayout[sNOTES];
+
+    // The geometry, worked out when the view's size changes.  Across the
+    // octaves (down in portrait mode, across in landscape mode) the cell
+    // for the octave indicator comes first, then the 12 note buttons;
+    // mNoteBounds has the boundaries.  Along the octaves, each octave
+    // takes mExtent pixels, starting at mAxisStart, less the scroll
+    // position mScroll.
+    private int[] mNoteBounds = new int[0];
+    private int mAxisStart;
+    private int mViewport;
+    private int mExtent;
+    private int mScroll;
+    private int mPendingFirstOctave = -1;
+    private final Rect mCell = new Rect();
+    private final Rect mDirty = new Rect();
+    private final Rect mClip = new Rect();
+
+    // The note pressed by each finger that is down on a button, by
+    // pointer ID
+    private final int[] mPointerIds = new int[sMAX_POINTERS];
+    private final int[] mPointerNotes = new int[sMAX_POINTERS];
+    private int mPointers = 0;
+
+    // The notes touched since the first one of a chord gesture
+    private final int[] mBatch = new int[sMAX_POINTERS];
+    private int mBatchCount = 0;
+    private long mBatchStart;
+    private int mChordWindow = DEFAULT_CHORD_WINDOW;
+    private final Runnable mFlushBatch = new Runnable() {
+        public void run() {
+            flushBatch();
+        }
+    };
+
+    // Scrolling
+    private OverScroller mScroller;
+    private VelocityTracker mVelocity;
+    private boolean mDragging;
+    private float mLastDrag;
+
+    public NoteGridView(Context context) {
+        super(context);
+        init(context);
+    }
+
+    public NoteGridView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(context);
+    }
+
+    public NoteGridView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        init(context);
+    }
+
+    private void init(Context context) {
+        mScroller = new OverScroller(context);
+    }
+
+    /**
+     * Supplies what the view draws.  Must be called before the view is
+     * laid out.
+     * @param octaves Supplies the images used to display octave indicators.
+     * @param notes Supplies the labels and background of the note buttons.
+     * @param isLandscape {@code true} for one row per octave, {@code false}
+     * for one column per octave.
+     */
+    public void setup(OctaveIndicators octaves, NoteButtons notes, boolean isLandscape) {
+        mOctaves = octaves;
+        mNotes = notes;
+        mLandscape = isLandscape;
+        mButton = notes.getBackground();
+        octaves.setPoolSize(sVISIBLE_OCTAVES + 2);
+
+        // Use the same text color as a Button would
+        TypedArray a = getContext().obtainStyledAttributes(null,
+            new int[] { android.R.attr.textColor }, android.R.attr.buttonStyle, 0);
+        mTextColors = a.getColorStateList(0);
+        a.recycle();
+        if (mTextColors == null)
+            mTextColors = ColorStateList.valueOf(Color.BLACK);
+
+        for (int i = 0; i < sNOTES; i++)
+            mLabels[i] = null;
+        computeCells(getWidth(), getHeight());
+        invalidate();
+    }
+
+    /**
+     * Registers a callback to be invoked when a note button is touched.
+     * @param l The callback, or {@code null}.
+     */
+    public void setOnNoteListener(OnNoteListener l) {
+        mListener = l;
+    }
+
+    /**
+     * Sets how long to wait after a button is touched for more fingers to
+     * go down, before the notes are reported together.
+     * @param ms The window, in milliseconds.  If 0, each note is reported
+     * as soon as it is touched.
+     */
+    public void setChordWindow(int ms) {
+        mChordWindow = Math.max(0, ms);
+    }
+
+    /**
+     * Scrolls so that an octave is the first one on the screen.
+     * @param octave The octave, from 0 (MIDI notes 0-11) up.
+     */
+    public void setFirstOctave(int octave) {
+        if (mExtent == 0) {
+            mPendingFirstOctave = octave;
+            return;
+        }
+        mScroller.forceFinished(true);
+        setScroll(octave * mExtent);
+    }
+
+    /**
+     * Returns the octave that is the first one on the screen, or mostly
+     * on it.
+     * @return The octave.
+     */
+    public int getFirstOctave() {
+        if (mExtent == 0)
+            return Math.max(0, mPendingFirstOctave);
+        return (mScroll + mExtent / 2) / mExtent;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        int first = getFirstOctave();
+        computeCells(w, h);
+        if (mPendingFirstOctave < 0)
+            mPendingFirstOctave = first;
+        if (mExtent > 0) {
+            setScroll(mPendingFirstOctave * mExtent);
+            mPendingFirstOctave = -1;
+        }
+    }
+
+    /**
+     * Works out the geometry.  As in the table this view replaced, the
+     * octave indicator and the note buttons share the space across the
+     * octaves in proportion to their natural sizes.
+     */
+    private void computeCells(int w, int h) {
+        if (mOctaves == null || w == 0 || h == 0)
+            return;
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        int width = w - left - getPaddingRight();
+        int height = h - top - getPaddingBottom();
+        mClip.set(left, top, left + width, top + height);
+        if (mLandscape) {
+            mNoteBounds = split(left, width, mOctaves.indicatorWidth(), mNotes.buttonWidth(), sNOTES);
+            mAxisStart = top;
+            mViewport = height;
+        } else {
+            mNoteBounds = split(top, height, mOctaves.indicatorHeight(), mNotes.buttonHeight(), sNOTES);
+            mAxisStart = left;
+            mViewport = width;
+        }
+        mExtent = Math.max(1, mViewport / sVISIBLE_OCTAVES);
+        setScroll(mScroll);
+    }
+
+    /**
+     * Divides a length into a first cell followed by equal cells, in
+     * proportion to their weights.
+     * @return The boundaries.
+     */
+    private static int[] split(int start, int length, int firstWeight, int weight, int count) {
+        int[] bounds = new int[count + 2];
+        long total = firstWeight + (long) weight * count;
+        bounds[0] = start;
+        for (int i = 0; i <= count; i++)
+            bounds[i + 1] = start + (int) (length * (firstWeight + (long) weight * i) / total);
+        return bounds;
+    }
+
+    private int maxScroll() {
+        return Math.max(0, OCTAVES * mExtent - mViewport);
+    }
+
+    private void setScroll(int scroll) {
+        int s = Math.max(0, Math.min(maxScroll(), scroll));
+        if (s != mScroll) {
+            mScroll = s;
+            invalidate();
+        }
+    }
+
+    @Override
+    public void computeScroll() {
+        if (mScroller.computeScrollOffset()) {
+            setScroll(mLandscape ? mScroller.getCurrY() : mScroller.getCurrX());
+            invalidate();
+        }
+    }
+
+    private int firstVisibleOctave() {
+        return Math.max(0, mScroll / mExtent);
+    }
+
+    private int lastVisibleOctave() {
+        return Math.min(OCTAVES - 1, (mScroll + mViewport - 1) / mExtent);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mOctaves == null || mNoteBounds.length == 0)
+            return;
+        canvas.save();
+        canvas.clipRect(mClip);
+        int last = lastVisibleOctave();
+        for (int octave = firstVisibleOctave(); octave <= last; octave++) {
+            cell(octave, -1, mCell);
+            drawIndicator(canvas, octave, mCell);
+            for (int note = 0; note < sNOTES; note++) {
+                int n = octave * sNOTES + note;
+                if (n > Chord.MAX_NOTE)
+                    break;
+                cell(octave, note, mCell);
+                drawButton(canvas, note, mCell, isPressed(n));
+            }
+        }
+        canvas.restore();
+    }
+
+    /**
+     * Finds the cell for an octave indicator or a note button.
+     * @param note The note in the scale, or -1 for the octave indicator.
+     */
+    private void cell(int octave, int note, Rect r) {
+        int a0 = mAxisStart + octave * mExtent - mScroll;
+        int a1 = a0 + mExtent;
+        int b0 = mNoteBounds[note + 1];
+        int b1 = mNoteBounds[note + 2];
+        if (mLandscape) {
+            r.set(b0, a0, b1, a1);
+            if (note >= 0) {
+                // The buttons keep their size, centered in the cell
+                int w = Math.min(r.width(), mNotes.buttonWidth());
+                int h = Math.min(r.height(), mNotes.buttonHeight());
+                r.inset((r.width() - w) / 2, (r.height() - h) / 2);
+            }
+        } else {
+            r.set(a0, b0, a1, b1);
+        }
+    }
+
+    /**
+     * Draws an octave indicator.  In portrait mode the image is scaled to
+     * cover the cell and cropped; in landscape mode it is drawn at its own
+     * size, centered.
+     */
+    private void drawIndicator(Canvas canvas, int octave, Rect cell) {
+        int iw = mOctaves.indicatorWidth();
+        int ih = mOctaves.indicatorHeight();
+        if (iw <= 0 || ih <= 0)
+            return;
+        Drawable d = mOctaves.getIndicator(octave);
+        float scale = mLandscape ? 1F
+            : Math.max((float) cell.width() / iw, (float) cell.height() / ih);
+        int w = Math.round(iw * scale);
+        int h = Math.round(ih * scale);
+        int x = cell.left + (cell.width() - w) / 2;
+        int y = cell.top + (cell.height() - h) / 2;
+        canvas.save();
+        canvas.clipRect(cell);
+        d.setBounds(x, y, x + w, y + h);
+        d.draw(canvas);
+        canvas.restore();
+    }
+
+    private void drawButton(Canvas canvas, int note, Rect cell, boolean pressed) {
+        int[] state = pressed ? sPRESSED_STATE : sNORMAL_STATE;
+        mButton.setState(state);
+        mButton.setBounds(cell);
+        mButton.draw(canvas);
+
+        StaticLayout label = label(note, cell.width());
+        label.getPaint().setColor(mTextColors.getColorForState(state, mTextColors.getDefaultColor()));
+        canvas.save();
+        canvas.translate(cell.left, cell.top + (cell.height() - label.getHeight()) / 2);
+        label.draw(canvas);
+        canvas.restore();
+    }
+
+    /**
+     * Returns the laid-out label for a note, laying it out again only if
+     * the width of the buttons has changed.
+     */
+    private StaticLayout label(int note, int width) {
+        StaticLayout label = mLabels[note];
+        if (label == null || label.getWidth() != width) {
+            TextPaint paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+            paint.setTypeface(Typeface.defaultFromStyle(Typeface.BOLD));
+            paint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                mNotes.getTextSize(note), getResources().getDisplayMetrics()));
+            label = new StaticLayout(mNotes.getLabel(note), paint, Math.max(0, width),
+                Layout.Alignment.ALIGN_CENTER, 1F, 0F, false);
+            mLabels[note] = label;
+        }
+        return label;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mOctaves == null || mNoteBounds.length == 0)
+            return false;
+        float along = mLandscape ? event.getY() : event.getX();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mScroller.forceFinished(true);
+                if (inIndicators(event.getX(), event.getY())) {
+                    startDrag(event, along);
+                    return true;
+                }
+                if (!mClip.contains((int) event.getX(), (int) event.getY()))
+                    return false;
+                pointerDown(event, 0);
+                return true;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (!mDragging)
+                    pointerDown(event, event.getActionIndex());
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (mDragging) {
+                    mVelocity.addMovement(event);
+                    setScroll(mScroll + Math.round(mLastDrag - along));
+                    mLastDrag = along;
+                } else {
+                    // Release the buttons that fingers have slid off
+                    for (int i = 0; i < event.getPointerCount(); i++) {
+                        int slot = findPointer(event.getPointerId(i));
+                        if (slot >= 0 && hitTest(event.getX(i), event.getY(i)) != mPointerNotes[slot])
+                            releasePointer(slot);
+                    }
+                }
+                return true;
+            case MotionEvent.ACTION_POINTER_UP: {
+                int slot = findPointer(event.getPointerId(event.getActionIndex()));
+                if (slot >= 0)
+                    releasePointer(slot);
+                return true;
+            }
+            case MotionEvent.ACTION_UP:
+                if (mDragging) {
+                    mVelocity.addMovement(event);
+                    mVelocity.computeCurrentVelocity(1000);
+                    fling(-(mLandscape ? mVelocity.getYVelocity() : mVelocity.getXVelocity()));
+                    endDrag();
+                } else if (mPointers > 0) {
+                    performClick();
+                }
+                releaseAll();
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                endDrag();
+                releaseAll();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Handles a finger going down, pressing the button under it if there
+     * is one.
+     * @param index The pointer index in the event.
+     */
+    private void pointerDown(MotionEvent event, int index) {
+        int n = hitTest(event.getX(index), event.getY(index));
+        if (n < 0 || mPointers == sMAX_POINTERS)
+            return;
+        mPointerIds[mPointers] = event.getPointerId(index);
+        mPointerNotes[mPointers] = n;
+        mPointers++;
+        invalidateButton(n);
+        addToBatch(n);
+    }
+
+    /**
+     * Adds a touched note to the notes to be reported, starting a new
+     * chord gesture if there isn't one.
+     */
+    private void addToBatch(int n) {
+        if (mBatchCount == 0) {
+            mBatchStart = System.nanoTime();
+            if (mChordWindow > 0)
+                postDelayed(mFlushBatch, mChordWindow);
+        }
+        for (int i = 0; i < mBatchCount; i++) {
+            if (mBatch[i] == n)
+                return;
+        }
+        if (mBatchCount < mBatch.length)
+            mBatch[mBatchCount++] = n;
+        if (mChordWindow == 0)
+            flushBatch();
+    }
+
+    /**
+     * Reports the notes of the chord gesture.
+     */
+    private void flushBatch() {
+        removeCallbacks(mFlushBatch);
+        if (mBatchCount == 0)
+            return;
+        int[] notes = new int[mBatchCount];
+        System.arraycopy(mBatch, 0, notes, 0, mBatchCount);
+        mBatchCount = 0;
+        if (mListener != null)
+            mListener.onNotes(notes, mBatchStart);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // Don't report notes to a fragment whose view has gone
+        removeCallbacks(mFlushBatch);
+        mBatchCount = 0;
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public boolean performClick() {
+        // The note has already been reported on touch-down; this is for
+        // accessibility services.
+        return super.performClick();
+    }
+
+    private void startDrag(MotionEvent event, float along) {
+        mDragging = true;
+        mLastDrag = along;
+        if (mVelocity == null)
+            mVelocity = VelocityTracker.obtain();
+        mVelocity.clear();
+        mVelocity.addMovement(event);
+    }
+
+    private void endDrag() {
+        mDragging = false;
+        if (mVelocity != null) {
+            mVelocity.recycle();
+            mVelocity = null;
+        }
+    }
+
+    private void fling(float velocity) {
+        int v = Math.round(velocity);
+        if (mLandscape)
+            mScroller.fling(0, mScroll, 0, v, 0, 0, 0, maxScroll());
+        else
+            mScroller.fling(mScroll, 0, v, 0, 0, maxScroll(), 0, 0);
+        invalidate();
+    }
+
+    /**
+     * Tests whether a point is in the strip of octave indicators.
+     */
+    private boolean inIndicators(float x, float y) {
+        float across = mLandscape ? x : y;
+        return mClip.contains((int) x, (int) y)
+            && across >= mNoteBounds[0] && across < mNoteBounds[1];
+    }
+
+    /**
+     * Finds the note button at a point.
+     * @return The MIDI note, or -1 if there is no button there.
+     */
+    private int hitTest(float x, float y) {
+        if (!mClip.contains((int) x, (int) y))
+            return -1;
+        float along = mLandscape ? y : x;
+        float across = mLandscape ? x : y;
+        int octave = (int) (along - mAxisStart + mScroll) / mExtent;
+        int note = find(mNoteBounds, across) - 1;   // cell 0 is the indicator
+        if (octave < 0 || octave >= OCTAVES || note < 0)
+            return -1;
+        int n = octave * sNOTES + note;
+        if (n > Chord.MAX_NOTE)
+            return -1;
+        cell(octave, note, mCell);
+        if (!mCell.contains((int) x, (int) y))
+            return -1;
+        return n;
+    }
+
+    /**
+     * Returns the cell that a coordinate falls in, or -1.
+     */
+    private static int find(int[] bounds, float v) {
+        for (int i = 0; i < bounds.length - 1; i++) {
+            if (v >= bounds[i] && v < bounds[i + 1])
+                return i;
+        }
+        return -1;
+    }
+
+    private int findPointer(int id) {
+        for (int i = 0; i < mPointers; i++) {
+            if (mPointerIds[i] == id)
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean isPressed(int n) {
+        for (int i = 0; i < mPointers; i++) {
+            if (mPointerNotes[i] == n)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Releases the button pressed by a finger.
+     * @param slot The finger's index in mPointerIds.
+     */
+    private void releasePointer(int slot) {
+        int n = mPointerNotes[slot];
+        mPointers--;
+        mPointerIds[slot] = mPointerIds[mPointers];
+        mPointerNotes[slot] = mPointerNotes[mPointers];
+        if (!isPressed(n))
+            invalidateButton(n);
+    }
+
+    private void releaseAll() {
+        while (mPointers > 0)
+            releasePointer(mPointers - 1);
+    }
+
+    private void invalidateButton(int n) {
+        cell(n / sNOTES, n % sNOTES, mDirty);
+        invalidate(mDirty);
+    }
+
+}
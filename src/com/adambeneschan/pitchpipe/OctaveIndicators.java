@@ -1,24 +1,49 @@
 /**
- * 
+ *
  */
 package com.adambeneschan.pitchpipe;
 
-import android.app.Fragment;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.Point;
-import android.view.View;
-import android.widget.ImageView;
+import android.graphics.Typeface;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 
 /**
- * Supplies a set of four "octave indicators", images that are used to
- * show the user what octave a note button belongs to.  The four images must
- * all have the same dimensions.
+ * Supplies the "octave indicators", images that are used to show the user
+ * what octave a note button belongs to.  There are pictures for the four
+ * octaves from C two octaves below middle C; the other octaves get a
+ * label (e.g. "C7") drawn into a bitmap of the same size.  Only a few of
+ * those bitmaps are kept: when an octave that isn't on the screen any more
+ * is replaced by one that is, its bitmap is drawn over and reused.  The
+ * images all have the same dimensions.
  * @author Adam Beneschan
  *
  */
 public class OctaveIndicators {
 
-    private Fragment mFragment;
+    /** The octave of the first picture (C2, MIDI note 36). */
+    private static final int sFIRST_PICTURE_OCTAVE = 3;
+
+    private static final int sBACKGROUND = Color.rgb(0xFB, 0xF8, 0xEE);
+
+    private Context mContext;
     private Point mOctaveDim;
+    private Drawable[] mPictures;
+    private int mPoolSize = 4;
+    private final LinkedHashMap<Integer, BitmapDrawable> mGenerated =
+        new LinkedHashMap<Integer, BitmapDrawable>(16, 0.75F, true);
+    private final ArrayList<BitmapDrawable> mFree = new ArrayList<BitmapDrawable>();
+    private Paint mTextPaint;
 
     private static final int[] sOctavePicture = new int[] {
         R.drawable.c_1, R.drawable.c_2, R.drawable.c_3, R.drawable.c_4
@@ -26,24 +51,99 @@ public class OctaveIndicators {
 
     /**
      * Constructs an OctaveIndicators object.
-     * @param f The Fragment that will be using the object.
+     * @param c The context (e.g. activity) in which the images will be used.
+     */
+    public OctaveIndicators(Context c) {
+        this.mContext = c;
+        mOctaveDim = Utilities.imageResourceDimensions(c.getResources(), sOctavePicture[0]);
+        mPictures = new Drawable[sOctavePicture.length];
+    }
+
+    /**
+     * Sets how many generated images are kept.  This should be at least
+     * the number of octaves that can be on the screen at once.
+     * @param size The number of images.
      */
-    public OctaveIndicators(Fragment f) {
-        this.mFragment = f;
-        mOctaveDim = Utilities.imageResourceDimensions(f.getResources(), sOctavePicture[0]);
+    public void setPoolSize(int size) {
+        mPoolSize = Math.max(1, size);
+        trim();
     }
 
     /**
-     * Returns a View that holds the octave indicator image for an octave
-     * @param octave The octave number, an integer from 0 to 3 inclusive
-     * (0 = octave starting at low C, 1 = the octave above #0, 
-     * 2 = octave starting at middle C, 3 = the octave above #2).
+     * Returns the octave indicator image for an octave.  The image for an
+     * octave without a picture may be reused for another octave once more
+     * than the pool size of other octaves have been asked for.
+     * @param octave The octave number, from 0 (MIDI notes 0-11) to 10
+     * (MIDI notes 120-127).  Octave 5 starts at middle C.
+     * @return A drawable holding the image.
      */
-    public View getIndicator(int octave) {
-        ImageView iv = new ImageView(mFragment.getActivity());
-        iv.setScaleType(ImageView.ScaleType.CENTER_CROP);  
-        iv.setImageResource(sOctavePicture[octave]);
-        return iv;
+    public Drawable getIndicator(int octave) {
+        int picture = octave - sFIRST_PICTURE_OCTAVE;
+        if (picture >= 0 && picture < sOctavePicture.length) {
+            if (mPictures[picture] == null)
+                mPictures[picture] = mContext.getResources().getDrawable(sOctavePicture[picture]);
+            return mPictures[picture];
+        }
+
+        BitmapDrawable d = mGenerated.get(octave);
+        if (d == null) {
+            if (mFree.isEmpty()) {
+                Bitmap b = Bitmap.createBitmap(Math.max(1, mOctaveDim.x), Math.max(1, mOctaveDim.y),
+                                               Bitmap.Config.ARGB_8888);
+                d = new BitmapDrawable(mContext.getResources(), b);
+            } else {
+                d = mFree.remove(mFree.size() - 1);
+            }
+            drawLabel(d.getBitmap(), octave);
+            mGenerated.put(octave, d);
+            trim();
+        }
+        return d;
+    }
+
+    /**
+     * Lets go of the generated images.
+     */
+    public void clear() {
+        for (BitmapDrawable d : mGenerated.values())
+            d.getBitmap().recycle();
+        for (BitmapDrawable d : mFree)
+            d.getBitmap().recycle();
+        mGenerated.clear();
+        mFree.clear();
+    }
+
+    /**
+     * Moves the least recently used images beyond the pool size to the
+     * free list, to be drawn over.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Integer, BitmapDrawable>> it = mGenerated.entrySet().iterator();
+        while (mGenerated.size() > mPoolSize && it.hasNext()) {
+            mFree.add(it.next().getValue());
+            it.remove();
+        }
+        while (mFree.size() > 1)
+            mFree.remove(mFree.size() - 1).getBitmap().recycle();
+    }
+
+    /**
+     * Draws the label for an octave, in scientific pitch notation (middle
+     * C is C4).
+     */
+    private void drawLabel(Bitmap b, int octave) {
+        if (mTextPaint == null) {
+            mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mTextPaint.setColor(Color.BLACK);
+            mTextPaint.setTypeface(Typeface.defaultFromStyle(Typeface.BOLD));
+            mTextPaint.setTextAlign(Paint.Align.CENTER);
+            mTextPaint.setTextSize(b.getHeight() * 0.4F);
+        }
+        Canvas canvas = new Canvas(b);
+        canvas.drawColor(sBACKGROUND);
+        Paint.FontMetrics fm = mTextPaint.getFontMetrics();
+        float y = (b.getHeight() - fm.ascent - fm.descent) / 2;
+        canvas.drawText("C" + (octave - 1), b.getWidth() / 2F, y, mTextPaint);
     }
 
     /**
@@ -53,7 +153,7 @@ public class OctaveIndicators {
     public int indicatorWidth() {
         return mOctaveDim.x;
     }
-    
+
     /**
      * Returns the height of each image.
      * @return The height of each image.
@@ -61,5 +161,5 @@ public class OctaveIndicators {
     public int indicatorHeight() {
         return mOctaveDim.y;
     }
-    
+
 }
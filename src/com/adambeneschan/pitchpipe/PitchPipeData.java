@@ -9,6 +9,7 @@ public class PitchPipeData {
     private boolean mStopped = false;
     private int mInstrument = 53;
     private InstrumentList mInstrList = null;
+    private Setlist mSetlist = null;
     
     private PitchPipeData() { 
     }
@@ -46,6 +47,11 @@ public class PitchPipeData {
     }
 
     public void setInstrumentList(InstrumentList list) {
+        // The instrument list is rebuilt whenever the activity is created;
+        // only throw away encoded chords if the instruments or their fade
+        // values (which limit chord durations) have actually changed.
+        if (mInstrList == null || list == null || !mInstrList.list().equals(list.list()))
+            EncodedChordCache.getInstance().invalidate();
         mInstrList = list;
     }
 
@@ -53,6 +59,14 @@ public class PitchPipeData {
         return mInstrList;
     }
 
+    public void setSetlist(Setlist setlist) {
+        mSetlist = setlist;
+    }
+
+    public Setlist getSetlist() {
+        return mSetlist;
+    }
+
     public void setIsStopped(boolean stopped) {
         mStopped = stopped;
     }
@@ -0,0 +1,150 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Latency histograms for each stage between a tap on a note button and
+ * the chord being heard.  The stages are timed by the code that does them
+ * and recorded here; the results can be read through
+ * {@link #getHistogram}, shown by {@link MetricsActivity}, or written to a
+ * file to compare devices.  There should be only one instance of this
+ * class in an app.
+ * @author Adam Beneschan
+ */
+public class PlaybackMetrics {
+
+    /**
+     * The stages that are timed.
+     */
+    public enum Stage {
+        /** From the tap until the chord is handed to {@link ChordPlayer}. */
+        BUILD,
+        /** Encoding the chord as a MIDI file (or finding it in the cache). */
+        ENCODE,
+        /** {@code MediaPlayer.prepare}, or waiting for a prefetched player. */
+        PREPARE,
+        /** {@code MediaPlayer.start} or {@code AudioTrack.play}. */
+        START,
+        /** From the tap (or the play request) until playback has started. */
+        TAP_TO_START,
+        /** From the completion callback until the listener has been told. */
+        COMPLETION
+    }
+
+    private static PlaybackMetrics sMetrics = null;
+
+    private final LatencyHistogram[] mHistograms;
+    private volatile long mTapTime = 0;
+
+    private PlaybackMetrics() {
+        Stage[] stages = Stage.values();
+        mHistograms = new LatencyHistogram[stages.length];
+        for (int i = 0; i < stages.length; i++)
+            mHistograms[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Returns the single instance of this class.
+     * @return The single instance of this class.
+     */
+    public static synchronized PlaybackMetrics getInstance() {
+        if (sMetrics == null) {
+            sMetrics = new PlaybackMetrics();
+        }
+        return sMetrics;
+    }
+
+    /**
+     * Notes the time of a tap that will lead to a chord being played.
+     */
+    public void tap() {
+        mTapTime = System.nanoTime();
+    }
+
+    /**
+     * Notes the time of a tap that happened earlier, e.g. the first
+     * finger of a chord put down with several.
+     * @param time The time of the tap, as from {@code System.nanoTime}.
+     */
+    public void tap(long time) {
+        mTapTime = time;
+    }
+
+    /**
+     * Returns and forgets the time of the last tap.
+     * @return The time passed to {@link #tap}, as from
+     * {@code System.nanoTime}, or 0 if there hasn't been one since the
+     * last call.
+     */
+    public long takeTapTime() {
+        long t = mTapTime;
+        mTapTime = 0;
+        return t;
+    }
+
+    /**
+     * Records the time a stage took.
+     * @param stage The stage.
+     * @param start When the stage started, as from {@code System.nanoTime}.
+     */
+    public void record(Stage stage, long start) {
+        mHistograms[stage.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the histogram for a stage.
+     * @param stage The stage.
+     * @return The histogram.
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return mHistograms[stage.ordinal()];
+    }
+
+    /**
+     * Forgets everything recorded.
+     */
+    public void reset() {
+        for (LatencyHistogram h : mHistograms)
+            h.reset();
+    }
+
+    /**
+     * Writes a report of every stage, one line each, with times in
+     * milliseconds.
+     * @param w Where to write the report.
+     * @throws IOException if the report can't be written.
+     */
+    public void report(Writer w) throws IOException {
+        for (Stage stage : Stage.values())
+            w.write(stage.name() + ": " + getHistogram(stage) + "\n");
+    }
+
+    /**
+     * Writes a report of every stage to a file, preceded by a heading
+     * (e.g. the device model).
+     * @param f The file.
+     * @param heading The heading line.
+     * @throws IOException if the file can't be written.
+     */
+    public void dump(File f, String heading) throws IOException {
+        FileWriter w = new FileWriter(f);
+        try {
+            w.write(heading + "\n");
+            report(w);
+        } finally {
+            w.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values())
+            sb.append(stage.name()).append(": ").append(getHistogram(stage)).append('\n');
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,243 @@
+package com.adambeneschan.pitchpipe;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records a timeline of what the playback pipeline is doing, for
+ * debugging plays that overlap.  Events are kept in a preallocated ring
+ * buffer, so the oldest are overwritten once it is full; each one has a
+ * timestamp, the thread, a name, an optional detail, and the generation
+ * number of the play it belongs to.  Recording allocates nothing, and
+ * costs one volatile read when recording is off.  The timeline can be
+ * exported in the Chrome trace event format (JSON), which can be loaded
+ * into chrome://tracing or Perfetto.  Names and details should be
+ * constant strings.  There should be only one instance of this class in
+ * an app.
+ * @author Adam Beneschan
+ */
+public class TraceRecorder {
+
+    /** The number of events kept. */
+    public static final int CAPACITY = 4096;
+
+    private static final char sBEGIN = 'B';
+    private static final char sEND = 'E';
+    private static final char sINSTANT = 'i';
+    private static final char sASYNC_BEGIN = 'b';
+    private static final char sASYNC_END = 'e';
+
+    private static TraceRecorder sRecorder = null;
+
+    private final long[] mTimes = new long[CAPACITY];
+    private final long[] mThreadIds = new long[CAPACITY];
+    private final String[] mThreadNames = new String[CAPACITY];
+    private final char[] mPhases = new char[CAPACITY];
+    private final String[] mNames = new String[CAPACITY];
+    private final String[] mDetails = new String[CAPACITY];
+    private final int[] mGenerations = new int[CAPACITY];
+    private final AtomicLong mNext = new AtomicLong(0);
+    private volatile boolean mEnabled = false;
+
+    private TraceRecorder() { }
+
+    /**
+     * Returns the single instance of this class.
+     * @return The single instance of this class.
+     */
+    public static synchronized TraceRecorder getInstance() {
+        if (sRecorder == null) {
+            sRecorder = new TraceRecorder();
+        }
+        return sRecorder;
+    }
+
+    /**
+     * Turns recording on or off.  It is off to begin with.
+     * @param enabled {@code true} to record events.
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * Tests whether events are being recorded.
+     * @return {@code true} if recording is on.
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Records the start of something done on this thread.  Must be
+     * matched by an {@link #end} with the same name on the same thread.
+     * @param name What is being done.
+     * @param generation The play it is done for, or 0.
+     */
+    public void begin(String name, int generation) {
+        if (mEnabled)
+            record(sBEGIN, name, null, generation);
+    }
+
+    /**
+     * Records the start of something done on this thread, with a detail.
+     * @param name What is being done.
+     * @param detail More about it, e.g. a reason.
+     * @param generation The play it is done for, or 0.
+     */
+    public void begin(String name, String detail, int generation) {
+        if (mEnabled)
+            record(sBEGIN, name, detail, generation);
+    }
+
+    /**
+     * Records the end of something started with {@link #begin}.
+     * @param name The name passed to {@code begin}.
+     * @param generation The play it was done for, or 0.
+     */
+    public void end(String name, int generation) {
+        if (mEnabled)
+            record(sEND, name, null, generation);
+    }
+
+    /**
+     * Records something that happened at one moment.
+     * @param name What happened.
+     * @param detail More about it, or {@code null}.
+     * @param generation The play it happened to, or 0.
+     */
+    public void instant(String name, String detail, int generation) {
+        if (mEnabled)
+            record(sINSTANT, name, detail, generation);
+    }
+
+    /**
+     * Records the start of the life of a play, which may end on another
+     * thread.
+     * @param name What the play is, e.g. "chord".
+     * @param generation The play's generation number.
+     */
+    public void playBegin(String name, int generation) {
+        if (mEnabled)
+            record(sASYNC_BEGIN, name, null, generation);
+    }
+
+    /**
+     * Records the end of the life of a play.
+     * @param name The name passed to {@link #playBegin}.
+     * @param detail Why it ended, or {@code null}.
+     * @param generation The play's generation number.
+     */
+    public void playEnd(String name, String detail, int generation) {
+        if (mEnabled)
+            record(sASYNC_END, name, detail, generation);
+    }
+
+    /**
+     * Forgets all recorded events.
+     */
+    public synchronized void clear() {
+        mNext.set(0);
+    }
+
+    private void record(char phase, String name, String detail, int generation) {
+        Thread t = Thread.currentThread();
+        int i = (int) (mNext.getAndIncrement() % CAPACITY);
+        mTimes[i] = System.nanoTime();
+        mThreadIds[i] = t.getId();
+        mThreadNames[i] = t.getName();
+        mPhases[i] = phase;
+        mNames[i] = name;
+        mDetails[i] = detail;
+        mGenerations[i] = generation;
+    }
+
+    /**
+     * Writes the recorded events, oldest first, in the Chrome trace event
+     * format.  Recording is paused while this runs.
+     * @param w Where to write the JSON.
+     * @throws IOException if it can't be written.
+     */
+    public synchronized void export(Writer w) throws IOException {
+        boolean wasEnabled = mEnabled;
+        mEnabled = false;
+        try {
+            long next = mNext.get();
+            long first = Math.max(0, next - CAPACITY);
+            Map<Long, String> threads = new HashMap<Long, String>();
+            w.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+            boolean comma = false;
+            for (long n = first; n < next; n++) {
+                int i = (int) (n % CAPACITY);
+                if (mNames[i] == null)
+                    continue;
+                threads.put(mThreadIds[i], mThreadNames[i]);
+                if (comma)
+                    w.write(",\n");
+                comma = true;
+                w.write("{\"name\":\"" + escape(mNames[i]) + "\",\"cat\":\"playback\",\"ph\":\""
+                        + mPhases[i] + "\",\"ts\":" + micros(mTimes[i])
+                        + ",\"pid\":1,\"tid\":" + mThreadIds[i]);
+                if (mPhases[i] == sINSTANT)
+                    w.write(",\"s\":\"t\"");
+                if (mPhases[i] == sASYNC_BEGIN || mPhases[i] == sASYNC_END)
+                    w.write(",\"id\":" + mGenerations[i]);
+                w.write(",\"args\":{\"generation\":" + mGenerations[i]);
+                if (mDetails[i] != null)
+                    w.write(",\"detail\":\"" + escape(mDetails[i]) + "\"");
+                w.write("}}");
+            }
+            // Name the threads
+            for (Map.Entry<Long, String> e : threads.entrySet()) {
+                if (comma)
+                    w.write(",\n");
+                comma = true;
+                w.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + e.getKey()
+                        + ",\"args\":{\"name\":\"" + escape(e.getValue()) + "\"}}");
+            }
+            w.write("\n]}\n");
+        } finally {
+            mEnabled = wasEnabled;
+        }
+    }
+
+    /**
+     * Writes the recorded events to a file in the Chrome trace event
+     * format.
+     * @param f The file.
+     * @throws IOException if the file can't be written.
+     */
+    public void export(File f) throws IOException {
+        FileWriter w = new FileWriter(f);
+        try {
+            export(w);
+        } finally {
+            w.close();
+        }
+    }
+
+    private static String micros(long nanos) {
+        long frac = nanos % 1000;
+        return (nanos / 1000) + "." + (frac < 100 ? (frac < 10 ? "00" : "0") : "") + frac;
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < ' ')
+                sb.append(' ');
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+
+}